@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * The cells of the {@link OntologyAnnotation}s a {@link RowPlan.Formatter} has
+ * seen recently. Annotations like units, species or growth conditions are
+ * usually shared by thousands of rows, so their term, Term Source REF and Term
+ * Accession Number are joined once and then appended as a whole. The cache is
+ * keyed by the identity of the annotation (which does not override equals),
+ * keeps the most recently used entries and recognizes entries of annotations
+ * and Term Source REFs that were changed by their setters since. Not
+ * thread-safe.
+ */
+final class AnnotationCellCache {
+
+	/**
+	 * The joined cells of one annotation, as they were when they were joined
+	 */
+	static final class Cells {
+
+		/**
+		 * The number of cells
+		 */
+		final int count;
+
+		private final int modifications;
+
+		private final Ontology sourceREF;
+
+		private final int sourceREFModifications;
+
+		/**
+		 * The cells separated by TABs
+		 */
+		final String text;
+
+		private Cells(OntologyAnnotation annotation) {
+			this.modifications = annotation.getModifications();
+			this.sourceREF = annotation.getSourceREF();
+			this.sourceREFModifications = this.sourceREF == null ? 0 : this.sourceREF.getModifications();
+			StringBuilder text = new StringBuilder().append(annotation.getTerm());
+			int count = 1;
+			if (this.sourceREF != null) {
+				text.append(Symbol.TAB.toString()).append(this.sourceREF.getName());
+				count++;
+			}
+			if (annotation.getTermAccession() != null) {
+				text.append(Symbol.TAB.toString()).append(annotation.getTermAccession());
+				count++;
+			}
+			this.text = text.toString();
+			this.count = count;
+		}
+
+		private boolean isCurrent(OntologyAnnotation annotation) {
+			return this.modifications == annotation.getModifications()
+					&& (this.sourceREF == null || this.sourceREFModifications == this.sourceREF.getModifications());
+		}
+	}
+
+	/**
+	 * Number of annotations that are remembered before the least recently used
+	 * one is dropped
+	 */
+	static final int MAX_ENTRIES = 1024;
+
+	@SuppressWarnings("serial")
+	private final Map<OntologyAnnotation, Cells> entries = new LinkedHashMap<OntologyAnnotation, Cells>(16, 0.75f,
+			true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<OntologyAnnotation, Cells> eldest) {
+			return this.size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * @param annotation the annotation
+	 * @return the current cells of the annotation, joined now if they are not
+	 *         cached or outdated
+	 */
+	Cells get(OntologyAnnotation annotation) {
+		Cells cells = this.entries.get(annotation);
+		if (cells == null || !cells.isCurrent(annotation)) {
+			cells = new Cells(annotation);
+			this.entries.put(annotation, cells);
+		}
+		return cells;
+	}
+
+	/**
+	 * @return the number of annotations in the cache
+	 */
+	int size() {
+		return this.entries.size();
+	}
+
+}
@@ -94,6 +94,7 @@ public class Assay extends WideTableFile implements Commentable {
 	 */
 	public void setMeasurementType(OntologyAnnotation measurementType) {
 		this.measurementType = measurementType;
+		this.modified();
 	}
 
 	/**
@@ -113,6 +114,7 @@ public class Assay extends WideTableFile implements Commentable {
 	 */
 	public void setTechnologyPlatform(String technologyPlatform) {
 		this.technologyPlatform = StringUtil.sanitize(technologyPlatform);
+		this.modified();
 	}
 
 	/**
@@ -120,6 +122,7 @@ public class Assay extends WideTableFile implements Commentable {
 	 */
 	public void setTechnologyType(OntologyAnnotation technologyType) {
 		this.technologyType = technologyType;
+		this.modified();
 	}
 
 	@Override
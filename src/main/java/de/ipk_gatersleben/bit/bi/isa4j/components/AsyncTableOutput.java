@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands everything that is written over to a dedicated I/O thread, which
+ * writes it to another {@link TableOutput}. The calling thread encodes into
+ * one of a fixed number of chunk buffers; full chunks are queued for the I/O
+ * thread, which returns them empty once they are written. The chunks form a
+ * bounded ring: if all of them are waiting to be written, the calling thread
+ * blocks until the I/O thread catches up.
+ *
+ * If writing fails in the background, the exception is rethrown to the
+ * calling thread the next time a chunk is handed over, and at the latest by
+ * {@link #flush()}, {@link #release()} or {@link #close()}.
+ */
+final class AsyncTableOutput extends TableOutput {
+
+	/**
+	 * Number of chunks in the ring
+	 */
+	static final int CHUNKS = 8;
+
+	/**
+	 * Tells the I/O thread to stop
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * The output the I/O thread writes to, only used by the calling thread when
+	 * the I/O thread is idle
+	 */
+	private final TableOutput destination;
+
+	/**
+	 * Exception thrown while writing in the background
+	 */
+	private volatile Throwable failure = null;
+
+	/**
+	 * Chunks that are empty and can be filled
+	 */
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+
+	/**
+	 * Chunks that are waiting to be written, in order
+	 */
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(CHUNKS + 1);
+
+	private final Thread writer;
+
+	/**
+	 * @param destination the output to write to in the background
+	 * @param chunkSize   the size of each chunk in bytes
+	 */
+	AsyncTableOutput(TableOutput destination, int chunkSize) {
+		super(ByteBuffer.allocate(Math.max(chunkSize, MIN_BUFFER_SIZE)));
+		this.destination = destination;
+		for (int i = 1; i < CHUNKS; i++)
+			this.free.add(ByteBuffer.allocate(this.buffer.capacity()));
+		this.writer = new Thread(this::writeChunks, "isa4j-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Wait until all chunks were written, i.e. all of them except the current one
+	 * are back in the free queue
+	 */
+	private void awaitWritten() throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[CHUNKS - 1];
+		try {
+			for (int i = 0; i < chunks.length; i++)
+				chunks[i] = this.free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the output to be written");
+		} finally {
+			for (ByteBuffer chunk : chunks)
+				if (chunk != null)
+					this.free.add(chunk);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure != null)
+			throw new IOException("Writing in the background failed", failure);
+	}
+
+	/**
+	 * Writes the remaining chunks, stops the I/O thread and closes the
+	 * destination.
+	 */
+	@Override
+	void close() throws IOException {
+		this.stop();
+		if (this.failure == null) {
+			this.destination.close();
+			return;
+		}
+		try {
+			this.destination.close();
+		} catch (IOException e) {
+			// The failure in the background is the one that matters
+		}
+		this.checkFailure();
+	}
+
+	/**
+	 * Queue the current chunk for writing and continue with an empty one, waiting
+	 * for one if there is none
+	 */
+	@Override
+	void drain() throws IOException {
+		this.checkFailure();
+		try {
+			this.full.put(this.buffer);
+			this.buffer = this.free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the output to be written");
+		}
+	}
+
+	/**
+	 * Waits until everything was written and flushes the destination.
+	 */
+	@Override
+	void flush() throws IOException {
+		if (this.buffer.position() > 0)
+			this.drain();
+		this.awaitWritten();
+		this.checkFailure();
+		this.destination.flush();
+	}
+
+	/**
+	 * Writes the remaining chunks, stops the I/O thread and releases the
+	 * destination without closing it.
+	 */
+	@Override
+	void release() throws IOException {
+		this.stop();
+		this.checkFailure();
+		this.destination.release();
+	}
+
+	/**
+	 * Hand over the current chunk and wait for the I/O thread to finish
+	 */
+	private void stop() throws IOException {
+		try {
+			if (this.buffer.position() > 0 && this.failure == null)
+				this.full.put(this.buffer);
+			this.full.put(END);
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the output to be written");
+		}
+	}
+
+	/**
+	 * Body of the I/O thread. After a failure, chunks are still taken and returned
+	 * so that the calling thread does not block, but they are not written anymore.
+	 */
+	private void writeChunks() {
+		while (true) {
+			ByteBuffer chunk;
+			try {
+				chunk = this.full.take();
+			} catch (InterruptedException e) {
+				this.failure = e;
+				return;
+			}
+			if (chunk == END)
+				return;
+			if (this.failure == null) {
+				try {
+					this.destination.write(chunk.array(), chunk.arrayOffset(), chunk.position());
+				} catch (Throwable e) {
+					this.failure = e;
+				}
+			}
+			chunk.clear();
+			this.free.add(chunk);
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encodes everything that is written into one reusable {@link ByteBuffer} and
+ * only hands it over to the underlying {@link WritableByteChannel} or
+ * {@link OutputStream} when it is full, so that a file is written in few large
+ * blocks instead of one system call per line.
+ */
+class BufferedTableOutput extends TableOutput {
+
+	private static ByteBuffer allocate(int bufferSize) {
+		if (bufferSize < MIN_BUFFER_SIZE)
+			throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE + " bytes");
+		return ByteBuffer.allocate(bufferSize);
+	}
+
+	private final WritableByteChannel channel;
+
+	private final OutputStream stream;
+
+	private BufferedTableOutput(WritableByteChannel channel, OutputStream stream, int bufferSize) {
+		super(allocate(bufferSize));
+		this.channel = channel;
+		this.stream = stream;
+	}
+
+	/**
+	 * @param channel    the channel to write to
+	 * @param bufferSize the size of the buffer in bytes
+	 */
+	BufferedTableOutput(WritableByteChannel channel, int bufferSize) {
+		this(channel, null, bufferSize);
+	}
+
+	/**
+	 * @param stream     the stream to write to
+	 * @param bufferSize the size of the buffer in bytes
+	 */
+	BufferedTableOutput(OutputStream stream, int bufferSize) {
+		this(null, stream, bufferSize);
+	}
+
+	@Override
+	void close() throws IOException {
+		this.drain();
+		if (this.channel != null)
+			this.channel.close();
+		else
+			this.stream.close();
+	}
+
+	/**
+	 * Hand the content of the buffer over to the channel or stream
+	 */
+	@Override
+	void drain() throws IOException {
+		this.buffer.flip();
+		if (this.channel != null) {
+			while (this.buffer.hasRemaining())
+				this.channel.write(this.buffer);
+		} else {
+			this.stream.write(this.buffer.array(), this.buffer.arrayOffset(), this.buffer.limit());
+		}
+		this.buffer.clear();
+	}
+
+	@Override
+	void flush() throws IOException {
+		this.drain();
+		if (this.stream != null)
+			this.stream.flush();
+	}
+
+	/**
+	 * Blocks that don't fit into the buffer are handed over to the channel or
+	 * stream directly, instead of being copied through the buffer.
+	 */
+	@Override
+	void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length <= this.buffer.remaining()) {
+			this.buffer.put(bytes, offset, length);
+			return;
+		}
+		this.drain();
+		if (length <= this.buffer.remaining()) {
+			this.buffer.put(bytes, offset, length);
+		} else if (this.channel != null) {
+			ByteBuffer block = ByteBuffer.wrap(bytes, offset, length);
+			while (block.hasRemaining())
+				this.channel.write(block);
+		} else {
+			this.stream.write(bytes, offset, length);
+		}
+	}
+
+}
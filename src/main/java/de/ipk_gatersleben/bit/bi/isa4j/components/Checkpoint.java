@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+/**
+ * A consistent state of a {@link WideTableFile} that is being written: the
+ * number of lines passed for writing, the number of lines in the file, the
+ * length of the file after them and a fingerprint of the headers. Checkpoints
+ * are stored in a sidecar file next to the file, see {@link #pathOf(String)},
+ * so that writing can be resumed after a crash.
+ */
+final class Checkpoint {
+
+	private static final String HEADERS = "headers";
+
+	private static final String LINES = "lines";
+
+	private static final String OFFSET = "offset";
+
+	private static final String ROWS = "rows";
+
+	/**
+	 * @param headerLine the header line, including the line break
+	 * @return the length of the encoded header line and its CRC-32
+	 */
+	static String fingerprint(CharSequence headerLine) {
+		byte[] bytes = headerLine.toString().getBytes(Props.DEFAULT_CHARSET);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return bytes.length + "-" + Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * @param fileName the name of the file the checkpoints are for
+	 * @return the path of the sidecar file
+	 */
+	static Path pathOf(String fileName) {
+		return Paths.get(fileName + ".checkpoint");
+	}
+
+	/**
+	 * Read the last checkpoint of a file
+	 *
+	 * @param path the sidecar file
+	 * @return the checkpoint
+	 * @throws IOException if the sidecar file can't be read or is incomplete
+	 */
+	static Checkpoint read(Path path) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(path)) {
+			properties.load(is);
+		}
+		try {
+			if (properties.getProperty(HEADERS) == null)
+				throw new NumberFormatException("No header fingerprint");
+			return new Checkpoint(Long.parseLong(properties.getProperty(ROWS)),
+					Long.parseLong(properties.getProperty(LINES)), Long.parseLong(properties.getProperty(OFFSET)),
+					properties.getProperty(HEADERS));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid checkpoint " + path, e);
+		}
+	}
+
+	/**
+	 * Fingerprint of the header line, see {@link #fingerprint(CharSequence)}
+	 */
+	final String headerFingerprint;
+
+	/**
+	 * Number of lines in the file after the header line, less than {@link #rows}
+	 * if duplicates were skipped
+	 */
+	final long lines;
+
+	/**
+	 * Length of the file in bytes after the lines
+	 */
+	final long offset;
+
+	/**
+	 * Number of lines passed for writing, including skipped duplicates
+	 */
+	final long rows;
+
+	Checkpoint(long rows, long lines, long offset, String headerFingerprint) {
+		this.rows = rows;
+		this.lines = lines;
+		this.offset = offset;
+		this.headerFingerprint = headerFingerprint;
+	}
+
+	/**
+	 * Replace the sidecar file with this checkpoint. The checkpoint is written to
+	 * a temporary file first and then moved, so the sidecar file always contains
+	 * a complete checkpoint.
+	 *
+	 * @param path the sidecar file
+	 * @throws IOException if the checkpoint can't be written
+	 */
+	void write(Path path) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(ROWS, Long.toString(this.rows));
+		properties.setProperty(LINES, Long.toString(this.lines));
+		properties.setProperty(OFFSET, Long.toString(this.offset));
+		properties.setProperty(HEADERS, this.headerFingerprint);
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(temporary)) {
+			properties.store(os, null);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
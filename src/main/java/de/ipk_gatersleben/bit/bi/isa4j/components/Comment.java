@@ -21,6 +21,12 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
  */
 public class Comment {
 
+	/**
+	 * Counts the changes made by the setters, so that cached sections of an
+	 * investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	/**
 	 * The name of the {@link Comment}.
 	 */
@@ -48,6 +54,13 @@ public class Comment {
 		this.value = value;
 	}
 
+	/**
+	 * @return the number of changes made by the setters so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * Get the name of the {@link Comment}
 	 *
@@ -64,6 +77,7 @@ public class Comment {
 	 */
 	public void setName(String name) {
 		this.name = StringUtil.sanitize(Objects.requireNonNull(name, "Comment name cannot be null"));
+		this.modifications++;
 	}
 
 	/**
@@ -82,6 +96,7 @@ public class Comment {
 	 */
 	public void setValue(String value) {
 		this.value = StringUtil.sanitize(value);
+		this.modifications++;
 	}
 
 	@Override
@@ -7,9 +7,7 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -37,15 +35,12 @@ public class DataFile extends StudyOrAssayTableObject implements Commentable {
 	}
 
 	/**
-	 * Please refer to documentation on StudyOrAssayTableObject.getFields
+	 * Please refer to documentation on StudyOrAssayTableObject.emitFields
 	 */
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(this.type, new String[]{this.path});
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
+	void emitFields(RowSink sink) {
+		sink.field(this.type);
+		sink.cell(this.path);
+		this.emitFieldsForComments(this.comments, sink);
 	}
 	
 	/**
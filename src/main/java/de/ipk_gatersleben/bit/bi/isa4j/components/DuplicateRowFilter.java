@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Deduplication;
+
+/**
+ * Remembers the {@link RowHash}es of the lines written to an output and tells
+ * whether a line was written before, see {@link Deduplication}. The memory is
+ * bounded by the limit the filter is created with. Used by the writing thread
+ * only.
+ */
+abstract class DuplicateRowFilter {
+
+	/**
+	 * Sets the bits of every line in a bit array of a fixed size
+	 */
+	private static final class BloomFilter extends DuplicateRowFilter {
+
+		/**
+		 * Number of bits set per line, optimal for about 10 bits per line
+		 */
+		private static final int PROBES = 7;
+
+		private final long[] bits;
+
+		private final long mask;
+
+		/**
+		 * @param memoryLimit the size of the bit array in bytes, rounded down to a
+		 *                    power of two
+		 */
+		private BloomFilter(long memoryLimit) {
+			int words = (int) Math.min(Long.highestOneBit(Math.max(memoryLimit >> 3, 1)), 1 << 30);
+			this.bits = new long[words];
+			this.mask = ((long) words << 6) - 1;
+		}
+
+		@Override
+		long memoryUsed() {
+			return (long) this.bits.length << 3;
+		}
+
+		@Override
+		boolean put(long h1, long h2) {
+			boolean added = false;
+			for (int i = 0; i < PROBES; i++) {
+				long bit = (h1 + i * h2) & this.mask;
+				int word = (int) (bit >>> 6);
+				long flag = 1L << bit;
+				if ((this.bits[word] & flag) == 0) {
+					this.bits[word] |= flag;
+					added = true;
+				}
+			}
+			return added;
+		}
+	}
+
+	/**
+	 * Open addressing set of the hashes, with linear probing. Every slot holds
+	 * both halves of a hash, (0, 0) marks an empty slot.
+	 */
+	private static final class HashSet extends DuplicateRowFilter {
+
+		/**
+		 * Number of slots of a new set
+		 */
+		private static final int INITIAL_CAPACITY = 1 << 10;
+
+		/**
+		 * The set grows when it is filled to 3/4 of its capacity
+		 */
+		private static boolean isFull(int size, int capacity) {
+			return size >= capacity - (capacity >> 2);
+		}
+
+		private final long memoryLimit;
+
+		/**
+		 * Whether the set can't grow anymore
+		 */
+		private boolean saturated = false;
+
+		private int size = 0;
+
+		/**
+		 * The two halves of the hashes, slot i is at 2 * i and 2 * i + 1
+		 */
+		private long[] table;
+
+		private HashSet(long memoryLimit) {
+			this.memoryLimit = memoryLimit;
+			this.table = new long[2 * INITIAL_CAPACITY];
+		}
+
+		/**
+		 * Double the capacity, if the memory allows it
+		 */
+		private boolean grow() {
+			long length = this.table.length;
+			if (length << 4 > this.memoryLimit || length >= 1 << 30)
+				return false;
+			long[] old = this.table;
+			this.table = new long[old.length << 1];
+			this.size = 0;
+			for (int i = 0; i < old.length; i += 2)
+				if (old[i] != 0 || old[i + 1] != 0)
+					this.insert(old[i], old[i + 1]);
+			return true;
+		}
+
+		/**
+		 * Put a hash that isn't in the set yet into a free slot
+		 */
+		private void insert(long h1, long h2) {
+			int mask = (this.table.length >> 1) - 1;
+			int slot = (int) h1 & mask;
+			while (this.table[2 * slot] != 0 || this.table[2 * slot + 1] != 0)
+				slot = (slot + 1) & mask;
+			this.table[2 * slot] = h1;
+			this.table[2 * slot + 1] = h2;
+			this.size++;
+		}
+
+		@Override
+		long memoryUsed() {
+			return (long) this.table.length << 3;
+		}
+
+		@Override
+		boolean put(long h1, long h2) {
+			if (h1 == 0 && h2 == 0)
+				h2 = 1;
+			int mask = (this.table.length >> 1) - 1;
+			int slot = (int) h1 & mask;
+			for (; this.table[2 * slot] != 0 || this.table[2 * slot + 1] != 0; slot = (slot + 1) & mask)
+				if (this.table[2 * slot] == h1 && this.table[2 * slot + 1] == h2)
+					return false;
+
+			if (isFull(this.size, mask + 1) && !this.grow()) {
+				// Lines that don't fit anymore are written, duplicate or not
+				if (!this.saturated) {
+					this.saturated = true;
+					logger.warn("The hashes of {} lines use up the memory for deduplication, later lines are written "
+							+ "even if they are duplicates.", this.size);
+				}
+				return true;
+			}
+			this.insert(h1, h2);
+			return true;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(DuplicateRowFilter.class);
+
+	/**
+	 * @param deduplication how duplicates are recognized, not
+	 *                      {@link Deduplication#NONE}
+	 * @param memoryLimit   the memory the filter may use in bytes
+	 * @return a new, empty filter
+	 */
+	static DuplicateRowFilter create(Deduplication deduplication, long memoryLimit) {
+		switch (deduplication) {
+		case HASH_SET:
+			return new HashSet(memoryLimit);
+		case BLOOM_FILTER:
+			return new BloomFilter(memoryLimit);
+		default:
+			throw new IllegalArgumentException("No filter for " + deduplication);
+		}
+	}
+
+	/**
+	 * Number of lines that were recognized as duplicates
+	 */
+	private long duplicates = 0;
+
+	/**
+	 * Hash of the line that is checked by the writing thread
+	 */
+	private final RowHash hash = new RowHash();
+
+	/**
+	 * Record a line
+	 *
+	 * @param line the complete line, including the line break
+	 * @return true if the line is new and should be written, false if it is a
+	 *         duplicate
+	 */
+	boolean add(CharSequence line) {
+		this.hash.reset();
+		this.hash.update(line, 0, line.length());
+		long[] hash = this.hash.finish();
+		return this.add(hash[0], hash[1]);
+	}
+
+	/**
+	 * Record a line by its hash
+	 *
+	 * @param h1 the lower half of the hash of the line, see
+	 *           {@link RowHash#finish()}
+	 * @param h2 the upper half of the hash
+	 * @return true if the line is new and should be written, false if it is a
+	 *         duplicate
+	 */
+	boolean add(long h1, long h2) {
+		if (this.put(h1, h2))
+			return true;
+		this.duplicates++;
+		return false;
+	}
+
+	/**
+	 * Record the line a template writes with the current values of its slots
+	 *
+	 * @param template the template
+	 * @return true if the line is new and should be written, false if it is a
+	 *         duplicate
+	 */
+	boolean add(RowTemplate template) {
+		this.hash.reset();
+		template.hashTo(this.hash);
+		long[] hash = this.hash.finish();
+		return this.add(hash[0], hash[1]);
+	}
+
+	/**
+	 * @return the number of lines that were recognized as duplicates
+	 */
+	long getDuplicates() {
+		return this.duplicates;
+	}
+
+	/**
+	 * @return the memory currently used in bytes
+	 */
+	abstract long memoryUsed();
+
+	/**
+	 * Record the hash of a line
+	 *
+	 * @param h1 the lower half of the hash
+	 * @param h2 the upper half of the hash
+	 * @return true if the hash was not recorded before
+	 */
+	abstract boolean put(long h1, long h2);
+
+}
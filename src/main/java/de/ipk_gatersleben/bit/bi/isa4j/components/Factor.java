@@ -20,6 +20,12 @@ public class Factor implements Commentable {
 	
 	private CommentCollection comments = new CommentCollection();
 	
+	/**
+	 * Counts the changes made by the setters, so that cached sections of an
+	 * investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	private String name;
 
 	/**
@@ -40,6 +46,13 @@ public class Factor implements Commentable {
 		return this.comments;
 	}
 
+	/**
+	 * @return the number of changes made by the setters so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -61,6 +74,7 @@ public class Factor implements Commentable {
 	 */
 	public void setName(String name) {
 		this.name = StringUtil.sanitize(Objects.requireNonNull(name, "Factor Name cannot be null"));
+		this.modifications++;
 	}
 
 	/**
@@ -70,6 +84,7 @@ public class Factor implements Commentable {
 	 */
 	public void setType(OntologyAnnotation type) {
 		this.type = type;
+		this.modifications++;
 	}
 	
 	@Override
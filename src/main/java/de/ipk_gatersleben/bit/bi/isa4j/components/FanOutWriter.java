@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes several {@link Study} and {@link Assay} files that are driven by the
+ * same stream of records, e.g. the imaging, sequencing and metabolomics
+ * assays of a study that all describe the same samples. Every file gets a row
+ * factory that turns a record into the first object of a line (or null if the
+ * record has no line in that file). The records are read once by the calling
+ * thread and handed to one thread per file, which builds and writes the lines
+ * of its file, so all files are written in parallel, each with its own
+ * output.<br>
+ * <br>
+ * The files have to be opened before and closed after writing, as with
+ * {@link WideTableFile#writeLine(StudyOrAssayTableObject)}. While
+ * {@link #write(Iterator)} runs, the files must not be used otherwise.<br>
+ * <br>
+ * <b>NOTE: The row factories run at the same time on different threads and
+ * must build the lines from objects of their own. Objects like a
+ * {@link Sample} can't be shared between the lines of different files,
+ * because linking them with a {@link Process} changes them.</b>
+ *
+ * @param <T> the type of the records
+ */
+public class FanOutWriter<T> {
+
+	/**
+	 * One file and the thread writing it
+	 */
+	private final class Lane implements Runnable {
+
+		private final WideTableFile file;
+
+		private final BlockingQueue<List<T>> queue = new ArrayBlockingQueue<List<T>>(QUEUE_BATCHES);
+
+		private final Function<? super T, ? extends StudyOrAssayTableObject> rowFactory;
+
+		private Thread thread;
+
+		private Lane(WideTableFile file, Function<? super T, ? extends StudyOrAssayTableObject> rowFactory) {
+			this.file = file;
+			this.rowFactory = rowFactory;
+		}
+
+		/**
+		 * Tell the thread that there are no more records and wait for it to finish
+		 */
+		private void finish() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					this.queue.put(end);
+					this.thread.join();
+					break;
+				} catch (InterruptedException e) {
+					// The thread has to be stopped in any case, remember to restore the flag
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 * Takes batches until the end. After a failure in any of the lanes, the
+		 * remaining batches are only taken so that the calling thread is not blocked.
+		 */
+		public void run() {
+			while (true) {
+				List<T> batch;
+				try {
+					batch = this.queue.take();
+				} catch (InterruptedException e) {
+					fail(e);
+					return;
+				}
+				if (batch == end)
+					return;
+				if (failure != null)
+					continue;
+				try {
+					for (T record : batch) {
+						StudyOrAssayTableObject initiator = this.rowFactory.apply(record);
+						if (initiator != null)
+							this.file.writeLine(initiator);
+					}
+				} catch (Throwable e) {
+					fail(e);
+				}
+			}
+		}
+
+		private void start() {
+			this.thread = new Thread(this, "isa4j-" + this.file.getFileName());
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	/**
+	 * Number of records handed to the threads at once
+	 */
+	static final int BATCH_SIZE = 256;
+
+	/**
+	 * Number of batches that can wait for each thread before reading further
+	 * records blocks
+	 */
+	static final int QUEUE_BATCHES = 4;
+
+	/**
+	 * Marks the end of the records
+	 */
+	private final List<T> end = new ArrayList<T>(0);
+
+	/**
+	 * The first exception of any of the threads
+	 */
+	private volatile Throwable failure = null;
+
+	private final List<Lane> lanes = new ArrayList<Lane>();
+
+	/**
+	 * Add a file to write.
+	 *
+	 * @param file       the study or assay to write, can only be added once
+	 * @param rowFactory creates the first object of a line from a record, or null
+	 *                   if there is no line for the record in this file
+	 */
+	public void add(WideTableFile file, Function<? super T, ? extends StudyOrAssayTableObject> rowFactory) {
+		Objects.requireNonNull(file, "File cannot be null");
+		Objects.requireNonNull(rowFactory, "Row factory cannot be null");
+		for (Lane lane : this.lanes)
+			if (lane.file == file)
+				throw new IllegalArgumentException(file + " was already added");
+		this.lanes.add(new Lane(file, rowFactory));
+	}
+
+	private synchronized void fail(Throwable e) {
+		if (this.failure == null)
+			this.failure = e;
+		else if (this.failure != e)
+			this.failure.addSuppressed(e);
+	}
+
+	/**
+	 * Write the lines of all records to all files. Stops at the first exception
+	 * in any of the files, which is then thrown after all threads finished.
+	 *
+	 * @param records the records
+	 * @throws IOException if a line can't be written
+	 */
+	public void write(Iterator<? extends T> records) throws IOException {
+		if (this.lanes.isEmpty())
+			throw new IllegalStateException("No files were added");
+		this.failure = null;
+		for (Lane lane : this.lanes)
+			lane.start();
+		try {
+			while (records.hasNext() && this.failure == null) {
+				List<T> batch = new ArrayList<T>(BATCH_SIZE);
+				while (batch.size() < BATCH_SIZE && records.hasNext())
+					batch.add(records.next());
+				// All threads get the same batch, they only read it
+				for (Lane lane : this.lanes)
+					lane.queue.put(batch);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while handing records to the writing threads");
+		} finally {
+			for (Lane lane : this.lanes)
+				lane.finish();
+		}
+
+		Throwable failure = this.failure;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new IOException(failure);
+	}
+
+	/**
+	 * Like {@link #write(Iterator)}, for the records of a {@link Stream}, which is
+	 * consumed in order by the calling thread.
+	 *
+	 * @param records the records
+	 * @throws IOException if a line can't be written
+	 */
+	public void write(Stream<? extends T> records) throws IOException {
+		this.write(records.iterator());
+	}
+
+}
@@ -10,21 +10,25 @@ package de.ipk_gatersleben.bit.bi.isa4j.components;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Compression;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
-import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
@@ -33,6 +37,139 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
  * overall information about the goals and means of the experiment.
  */
 public class Investigation implements Commentable {
+
+	/**
+	 * The lines of the INVESTIGATION CONTACTS block
+	 */
+	private static final SectionTable<Person> INVESTIGATION_CONTACTS = new SectionTable<Person>()
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_LAST_NAME, Person::getLastName)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_FIRST_NAME, Person::getFirstName)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_MID_INITIALS, Person::getMidInitials)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_EMAIL, Person::getEmail)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_PHONE, Person::getPhone)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_FAX, Person::getFax)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_ADDRESS, Person::getAddress)
+			.line(InvestigationAttribute.INVESTIGATION_PERSON_AFFILIATION, Person::getAffiliation)
+			.joinedOntologyLines(InvestigationAttribute.INVESTIGATION_PERSON_ROLES, Person::getRoles, r -> r);
+
+	/**
+	 * The lines of the INVESTIGATION block, with a single column
+	 */
+	private static final SectionTable<Investigation> INVESTIGATION_HEADERS = new SectionTable<Investigation>()
+			.line(InvestigationAttribute.INVESTIGATION_IDENTIFIER, i -> i.identifier)
+			.line(InvestigationAttribute.INVESTIGATION_TITLE, i -> i.title)
+			.line(InvestigationAttribute.INVESTIGATION_DESCRIPTION, i -> i.description)
+			.line(InvestigationAttribute.INVESTIGATION_SUBMISSION_DATE,
+					i -> i.submissionDate == null ? null : i.submissionDate.toString())
+			.line(InvestigationAttribute.INVESTIGATION_PUBLIC_RELEASE_DATE,
+					i -> i.publicReleaseDate == null ? null : i.publicReleaseDate.toString());
+
+	/**
+	 * The lines of the INVESTIGATION PUBLICATIONS block
+	 */
+	private static final SectionTable<Publication> INVESTIGATION_PUBLICATIONS = new SectionTable<Publication>()
+			.line(InvestigationAttribute.INVESTIGATION_PUBMED_ID, Publication::getPubmedID)
+			.line(InvestigationAttribute.INVESTIGATION_PUBLICATION_DOI, Publication::getDOI)
+			.line(InvestigationAttribute.INVESTIGATION_PUBLICATION_AUTHOR_LIST, Publication::getAuthors)
+			.line(InvestigationAttribute.INVESTIGATION_PUBLICATION_TITLE, Publication::getTitle)
+			.ontologyLines(InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, Publication::getStatus);
+
+	/**
+	 * Number of sections before the studies: ontologies, investigation headers,
+	 * publications and contacts
+	 */
+	private static final int INVESTIGATION_SECTIONS = 4;
+
+	/**
+	 * The lines of the ONTOLOGY SOURCE REFERENCE block
+	 */
+	private static final SectionTable<Ontology> ONTOLOGIES = new SectionTable<Ontology>()
+			.line(InvestigationAttribute.TERM_SOURCE_NAME, Ontology::getName)
+			.line(InvestigationAttribute.TERM_SOURCE_FILE, o -> o.getURL().toString())
+			.line(InvestigationAttribute.TERM_SOURCE_VERSION, Ontology::getVersion)
+			.line(InvestigationAttribute.TERM_SOURCE_DESCRIPTION, Ontology::getDescription);
+
+	/**
+	 * The lines of the STUDY ASSAYS block
+	 */
+	private static final SectionTable<Assay> STUDY_ASSAYS = new SectionTable<Assay>()
+			.line(InvestigationAttribute.STUDY_ASSAY_FILE_NAME, Assay::getFileName)
+			.ontologyLines(InvestigationAttribute.STUDY_ASSAY_MEASUREMENT_TYPE, Assay::getMeasurementType)
+			.ontologyLines(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_TYPE, Assay::getTechnologyType)
+			.line(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_PLATFORM, Assay::getTechnologyPlatform);
+
+	/**
+	 * The lines of the STUDY CONTACTS block
+	 */
+	private static final SectionTable<Person> STUDY_CONTACTS = new SectionTable<Person>()
+			.line(InvestigationAttribute.STUDY_PERSON_LAST_NAME, Person::getLastName)
+			.line(InvestigationAttribute.STUDY_PERSON_FIRST_NAME, Person::getFirstName)
+			.line(InvestigationAttribute.STUDY_PERSON_MID_INITIALS, Person::getMidInitials)
+			.line(InvestigationAttribute.STUDY_PERSON_EMAIL, Person::getEmail)
+			.line(InvestigationAttribute.STUDY_PERSON_PHONE, Person::getPhone)
+			.line(InvestigationAttribute.STUDY_PERSON_FAX, Person::getFax)
+			.line(InvestigationAttribute.STUDY_PERSON_ADDRESS, Person::getAddress)
+			.line(InvestigationAttribute.STUDY_PERSON_AFFILIATION, Person::getAffiliation)
+			.joinedOntologyLines(InvestigationAttribute.STUDY_PERSON_ROLES, Person::getRoles, r -> r);
+
+	/**
+	 * The lines of the STUDY DESIGN DESCRIPTORS block
+	 */
+	private static final SectionTable<OntologyAnnotation> STUDY_DESIGN_DESCRIPTORS =
+			new SectionTable<OntologyAnnotation>()
+			.ontologyLines(InvestigationAttribute.STUDY_DESIGN_TYPE, o -> o);
+
+	/**
+	 * The lines of the STUDY FACTORS block
+	 */
+	private static final SectionTable<Factor> STUDY_FACTORS = new SectionTable<Factor>()
+			.line(InvestigationAttribute.STUDY_FACTOR_NAME, Factor::getName)
+			.ontologyLines(InvestigationAttribute.STUDY_FACTOR_TYPE, Factor::getType);
+
+	/**
+	 * The lines of the STUDY block, with a single column
+	 */
+	private static final SectionTable<Study> STUDY_HEADERS = new SectionTable<Study>()
+			.line(InvestigationAttribute.STUDY_IDENTIFIER, Study::getIdentifier)
+			.line(InvestigationAttribute.STUDY_TITLE, Study::getTitle)
+			.line(InvestigationAttribute.STUDY_DESCRIPTION, Study::getDescription)
+			.line(InvestigationAttribute.STUDY_SUBMISSION_DATE,
+					s -> s.getSubmissionDate() == null ? null : s.getSubmissionDate().toString())
+			.line(InvestigationAttribute.STUDY_PUBLIC_RELEASE_DATE,
+					s -> s.getPublicReleaseDate() == null ? null : s.getPublicReleaseDate().toString())
+			.line(InvestigationAttribute.STUDY_FILE_NAME, Study::getFileName);
+
+	/**
+	 * The lines of the STUDY PROTOCOLS block
+	 */
+	private static final SectionTable<Protocol> STUDY_PROTOCOLS = new SectionTable<Protocol>()
+			.line(InvestigationAttribute.STUDY_PROTOCOL_NAME, Protocol::getName)
+			.ontologyLines(InvestigationAttribute.STUDY_PROTOCOL_TYPE, Protocol::getType)
+			.line(InvestigationAttribute.STUDY_PROTOCOL_DESCRIPTION, Protocol::getDescription)
+			.line(InvestigationAttribute.STUDY_PROTOCOL_URI, Protocol::getURI)
+			.line(InvestigationAttribute.STUDY_PROTOCOL_VERSION, Protocol::getVersion)
+			.joinedOntologyLines(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME, Protocol::getParameters,
+					ProtocolParameter::getName)
+			.joinedLine(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_NAME, Protocol::getComponents,
+					ProtocolComponent::getName)
+			.joinedOntologyLines(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE, Protocol::getComponents,
+					ProtocolComponent::getType);
+
+	/**
+	 * The lines of the STUDY PUBLICATIONS block
+	 */
+	private static final SectionTable<Publication> STUDY_PUBLICATIONS = new SectionTable<Publication>()
+			.line(InvestigationAttribute.STUDY_PUBMED_ID, Publication::getPubmedID)
+			.line(InvestigationAttribute.STUDY_PUBLICATION_DOI, Publication::getDOI)
+			.line(InvestigationAttribute.STUDY_PUBLICATION_AUTHOR_LIST, Publication::getAuthors)
+			.line(InvestigationAttribute.STUDY_PUBLICATION_TITLE, Publication::getTitle)
+			.ontologyLines(InvestigationAttribute.STUDY_PUBLICATION_STATUS, Publication::getStatus);
+
+	/**
+	 * Number of sections of a study: headers with design descriptors,
+	 * publications, factors, assays, protocols and contacts
+	 */
+	private static final int STUDY_SECTIONS = 6;
 	
 	/**
 	 * Pass a list of Commentables (Person, Publication...) and get back a String containing all comment lines
@@ -59,39 +196,7 @@ public class Investigation implements Commentable {
 	 * @return Formatted lines containing the comments
 	 */
 	static <T extends Commentable> String formatComments(List<T> commentables) {
-		
-		// Turn the commentables into a list of lists of comments
-		List<List<Comment>> commentBuckets = commentables.stream()
-				.map(c -> c.comments().getAll())
-				.collect(Collectors.toList());
-		
-		// Get a List of all Comment types present in any of the buckets
-		List<String> commentLevels = commentBuckets.stream()
-				.flatMap(bucket -> bucket.stream()) // flatten
-				.map(comment -> comment.getName())
-				.distinct() // remove duplicates
-				.collect(Collectors.toList());
-		
-		// Now loop through all comment types and create a line for each
-		StringBuilder sb = new StringBuilder();
-		for(String commentType : commentLevels) {
-			sb.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, commentType) + Symbol.TAB);
-			// Now loop through all the buckets and see if that comment type is present
-			String commentLine = commentBuckets.stream()
-				// For each bucket -> go through each comment
-				.map(bucket -> bucket.stream()
-					// Filter out only comments of the current type
-					.filter(comment -> comment.getName().equals(commentType))
-					// Get the contents of these comments
-					.map(comment -> comment.getValue())
-					// Join them all together by semicolons (it could be the case that a person has two comments with the same type)
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-				// Join all the buckets by TABs
-				.collect(Collectors.joining(Symbol.TAB.toString()));
-			sb.append(commentLine);
-			sb.append(Symbol.ENTER.toString());
-		}
-		return sb.toString();
+		return SectionWriter.format(writer -> writer.comments(commentables));
 	}
 	
 	/**
@@ -107,9 +212,7 @@ public class Investigation implements Commentable {
 	 * @return Line formatted in ISATab (contains line break)
 	 */
 	static String formatSimpleAttribute(InvestigationAttribute lineName, String value) {
-		return lineName.toString() + Symbol.TAB
-			+ (value == null ? Symbol.EMPTY.toString() : value)
-			+ Symbol.ENTER.toString();
+		return SectionWriter.format(writer -> writer.attribute(lineName, value));
 	}
 
 	/**
@@ -119,13 +222,7 @@ public class Investigation implements Commentable {
 	 * @return comment lines formatted in ISA-Tab
 	 */
 	static String formatSimpleComments(List<Comment> comments) {
-		StringBuilder sb = new StringBuilder();
-		Collections.sort(comments, (c1, c2) -> c1.getName().compareTo(c2.getName()));
-		for (Comment c : comments) {
-			sb.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, c.getName()) + Symbol.TAB);
-			sb.append(c.getValue()).append(Symbol.ENTER);
-		}
-		return sb.toString();
+		return SectionWriter.format(writer -> writer.simpleComments(comments));
 	}
 
 	/**
@@ -144,19 +241,7 @@ public class Investigation implements Commentable {
 	 * @return The complete line
 	 */
 	static <C, T> String lineFromList(C lineName, List<T> list, Function<T, String> lambda) {
-		if(list.size() == 0)
-			return lineName.toString() + Symbol.ENTER;
-	
-		StringBuilder sb = new StringBuilder();
-		sb.append(lineName.toString() + Symbol.TAB); // Append the Line name
-		sb.append(list.stream()
-				.map(obj -> { // on each object in the list:
-					String result = lambda.apply(obj); // execute the function that was passed
-					return result == null ? Symbol.EMPTY.toString() : result; // if the result was null, replace with an empty string
-				})
-				.collect(Collectors.joining(Symbol.TAB.toString()))); // join all the strings together by TABs
-		sb.append(Symbol.ENTER.toString()); // Close the line with ENTER
-		return sb.toString();
+		return SectionWriter.format(writer -> new SectionTable<T>().line(lineName, lambda).writeTo(writer, list));
 	}
 
 	/**
@@ -178,12 +263,25 @@ public class Investigation implements Commentable {
 	 * @return 3 lines describing an ontology objects term, accession, and source reference
 	 */
 	static <C, T> String ontologyLinesFromList(C lineName, List<T> list, Function<T, OntologyAnnotation> lambda) {
-		return lineFromList(lineName, list,
-				a ->lambda.apply(a) == null ? Symbol.EMPTY.toString() : lambda.apply(a).getTerm())
-		+ lineFromList(lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, list,
-				a ->lambda.apply(a) == null ? Symbol.EMPTY.toString() : lambda.apply(a).getTermAccession())
-		+ lineFromList(lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, list,
-				a ->lambda.apply(a) == null || lambda.apply(a).getSourceREF() == null ? Symbol.EMPTY.toString() : lambda.apply(a).getSourceREF().getName());
+		return SectionWriter.format(
+				writer -> new SectionTable<T>().ontologyLines(lineName, lambda).writeTo(writer, list));
+	}
+
+	/**
+	 * Write a section, from its cache if one is given
+	 *
+	 * @param writer  the writer of the lines
+	 * @param cache   the cache of the section, null if not writing incrementally
+	 * @param key     records the objects the section shows
+	 * @param section writes the lines of the section
+	 * @throws IOException if writing fails
+	 */
+	private static void writeSection(SectionWriter writer, SectionCache cache, Supplier<SectionCache.Key> key,
+			SectionWriter.Section section) throws IOException {
+		if (cache == null)
+			section.writeTo(writer);
+		else
+			writer.encoded(cache.get(key, section));
 	}
 
 	private CommentCollection comments = new CommentCollection();
@@ -199,13 +297,30 @@ public class Investigation implements Commentable {
 	 */
 	private String description;
 
+	/**
+	 * Number of threads formatting the study blocks in
+	 * {@link #writeToStream(OutputStream)}
+	 */
+	private int formattingThreads = 1;
+
 	/**
 	 * The defined identifier for the {@link Investigation}.
 	 */
 	private String identifier;
+
+	/**
+	 * The cached sections before the studies, null unless writing incrementally
+	 */
+	private SectionCache[] investigationSections = null;
 	
 	private final Logger logger = LoggerFactory.getLogger(Investigation.class);
 
+	/**
+	 * Counts the changes made by the setters and adders, so that cached sections
+	 * of an investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	/**
 	 * The list of the used ontologies for this investigation {@link Ontology}
 	 */
@@ -221,11 +336,21 @@ public class Investigation implements Commentable {
 	 */
 	private LocalDate publicReleaseDate;
 
+	/**
+	 * Number of sections rendered by the last incremental write
+	 */
+	private int sectionsRendered = 0;
+
 	/**
 	 * Studies of investigations {@link Study}
 	 */
 	private List<Study> studies = new ArrayList<>();
 
+	/**
+	 * The cached sections of every study, null unless writing incrementally
+	 */
+	private IdentityHashMap<Study, SectionCache[]> studySections = null;
+
 	/**
 	 * The date the {@link Investigation} was submitted
 	 */
@@ -252,6 +377,7 @@ public class Investigation implements Commentable {
 	 */
 	public void addContact(Person person) {
 		this.contacts.add(Objects.requireNonNull(person, "Person cannot be null"));
+		this.modifications++;
 	}
 
 	/**
@@ -261,6 +387,7 @@ public class Investigation implements Commentable {
 	 */
 	public void addOntology(Ontology ontology) {
 		this.ontologies.add(Objects.requireNonNull(ontology, "Ontology cannot be null"));
+		this.modifications++;
 	}
 
 	/**
@@ -270,6 +397,7 @@ public class Investigation implements Commentable {
 	 */
 	public void addPublication(Publication publication) {
 		this.publications.add(Objects.requireNonNull(publication, "Publication cannot be null"));
+		this.modifications++;
 	}
 
 	/**
@@ -285,190 +413,42 @@ public class Investigation implements Commentable {
 
 		study.setInvestigation(this);
 		this.studies.add(study);
+		this.modifications++;
 	}
 
 	public CommentCollection comments() {
 		return this.comments;
 	}
 
-	private String formatInvestigationContacts() {
-		return InvestigationAttribute.INVESTIGATION_CONTACTS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_LAST_NAME, this.contacts, (o) -> o.getLastName())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_FIRST_NAME, this.contacts,(o) -> o.getFirstName())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_MID_INITIALS, this.contacts,(o) -> o.getMidInitials())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_EMAIL, this.contacts,(o) -> o.getEmail())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_PHONE, this.contacts,(o) -> o.getPhone())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_FAX, this.contacts,(o) -> o.getFax())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ADDRESS, this.contacts,(o) -> o.getAddress())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_AFFILIATION, this.contacts,(o) -> o.getAffiliation())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES, this.contacts,
-				(o) -> o.getRoles().stream().map(c -> c.getTerm()).collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER,
-				this.contacts,
-				obj -> { return obj.getRoles().stream().map(
-							r -> r.getTermAccession() == null ? Symbol.EMPTY.toString() : r.getTermAccession()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())) ; }
-				)
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF,
-				this.contacts,
-				obj -> {
-					return obj.getRoles().stream().map(
-							// If there is no role or if there is but it doesn't have an Ontology connected: return empty string
-							// Otherwise return the Ontology's name
-							r -> r == null || r.getSourceREF() == null ? Symbol.EMPTY.toString() : r.getSourceREF().getName()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())); }
-				)
-			+ formatComments(this.contacts);
-	}
-
-	private String formatInvestigationHeaders() {		
-		return InvestigationAttribute.INVESTIGATION.toString() + Symbol.ENTER
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_IDENTIFIER, this.identifier)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_TITLE, this.title)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_DESCRIPTION, this.description)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_SUBMISSION_DATE, 
-				this.submissionDate == null ? null : this.submissionDate.toString())
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_PUBLIC_RELEASE_DATE, 
-				this.publicReleaseDate == null ? null : this.publicReleaseDate.toString())
-				
-			+  formatSimpleComments(this.comments().getAll());	
-	}
-
-	private String formatInvestigationPublications() {	
-		return InvestigationAttribute.INVESTIGATION_PUBLICATIONS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBMED_ID, this.publications, (o) -> o.getPubmedID())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_DOI, this.publications, (o) -> o.getDOI())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_AUTHOR_LIST, this.publications,(o) -> o.getAuthors())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_TITLE, this.publications, (o) -> o.getTitle())
-			+ ontologyLinesFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, this.publications, p -> p.getStatus())
-		
-			+ formatComments(this.publications);
-		
-	}
-
-	private String formatOntologies() {	
-		return InvestigationAttribute.ONTOLOGY_SOURCE_REFERENCE.toString() + Symbol.ENTER
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_NAME, this.ontologies, o -> o.getName())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_FILE, this.ontologies, o -> o.getURL().toString())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_VERSION, this.ontologies, o -> o.getVersion())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_DESCRIPTION, this.ontologies, o -> o.getDescription());
-	}
-
-	private String formatStudyAssays(Study study) {
-		return InvestigationAttribute.STUDY_ASSAYS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_ASSAY_FILE_NAME, study.getAssays(), a -> a.getFileName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_ASSAY_MEASUREMENT_TYPE, study.getAssays(), a -> a.getMeasurementType())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_TYPE, study.getAssays(), a -> a.getTechnologyType())
-			+ lineFromList(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_PLATFORM, study.getAssays(), a -> a.getTechnologyPlatform())
-			+ formatComments(study.getAssays());
-	}
-
-	private String formatStudyContacts(Study study) {
-		return InvestigationAttribute.STUDY_CONTACTS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_LAST_NAME, study.getContacts(), (o) -> o.getLastName())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_FIRST_NAME, study.getContacts(),(o) -> o.getFirstName())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_MID_INITIALS, study.getContacts(),(o) -> o.getMidInitials())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_EMAIL, study.getContacts(),(o) -> o.getEmail())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_PHONE, study.getContacts(),(o) -> o.getPhone())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_FAX, study.getContacts(),(o) -> o.getFax())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ADDRESS, study.getContacts(),(o) -> o.getAddress())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_AFFILIATION, study.getContacts(),(o) -> o.getAffiliation())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES, study.getContacts(),
-				(o) -> o.getRoles().stream().map(c -> c.getTerm()).collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER,
-				study.getContacts(),
-				obj -> { return obj.getRoles().stream().map(
-							r -> r.getTermAccession() == null ? Symbol.EMPTY.toString() : r.getTermAccession()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())) ; }
-				)
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF,
-				study.getContacts(),
-				obj -> {
-					return obj.getRoles().stream().map(
-							// If there is no role or if there is but it doesn't have an Ontology connected: return empty string
-							// Otherwise return the Ontology's name
-							r -> r == null || r.getSourceREF() == null ? Symbol.EMPTY.toString() : r.getSourceREF().getName()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())); }
-				)
-			+ formatComments(study.getContacts());
-	}
-
-	private String formatStudyFactors(Study study) {
-		return InvestigationAttribute.STUDY_FACTORS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_FACTOR_NAME, study.getFactors(), o -> o.getName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_FACTOR_TYPE, study.getFactors(), f -> f.getType())
-			+ formatComments(study.getFactors());
-	}
-
-	private String formatStudyHeaders(Study study) {
-		return InvestigationAttribute.STUDY.toString() + Symbol.ENTER
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_IDENTIFIER, study.getIdentifier())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_TITLE, study.getTitle())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_DESCRIPTION, study.getDescription())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_SUBMISSION_DATE, 
-				study.getSubmissionDate() == null ? null : study.getSubmissionDate().toString())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_PUBLIC_RELEASE_DATE, 
-				study.getPublicReleaseDate() == null ? null : study.getPublicReleaseDate().toString())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_FILE_NAME, study.getFileName())
-			+ formatSimpleComments(study.comments().getAll())
-		// STUDY DESIGN DESCRIPTORS
-			+ InvestigationAttribute.STUDY_DESIGN_DESCRIPTORS.toString() + Symbol.ENTER
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_DESIGN_TYPE, study.getDesignDescriptors(), o -> o)
-			+ formatComments(study.getDesignDescriptors());
-		
-	}
-
-	private String formatStudyProtocols(Study study) {
-		return InvestigationAttribute.STUDY_PROTOCOLS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_NAME, study.getProtocols(), p -> p.getName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_PROTOCOL_TYPE, study.getProtocols(), p -> p.getType())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_DESCRIPTION, study.getProtocols(), p -> p.getDescription())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_URI, study.getProtocols(), p -> p.getURI())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_VERSION, study.getProtocols(), p -> p.getVersion())
-			
-			// Protocol Parameters
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName().getTerm())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName() == null || param.getName().getTermAccession() == null ? Symbol.EMPTY.toString() : param.getName().getTermAccession())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName() == null || param.getName().getSourceREF() == null ? Symbol.EMPTY.toString() : param.getName().getSourceREF().getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			
-			// Protocol Components
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_NAME, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null ? Symbol.EMPTY.toString() : component.getType().getTerm())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null || component.getType().getTermAccession() == null ? Symbol.EMPTY.toString() : component.getType().getTermAccession())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null || component.getType().getSourceREF() == null ? Symbol.EMPTY.toString() : component.getType().getSourceREF().getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			
-			+ formatComments(study.getProtocols());
-	}
-
-	private String formatStudyPublications(Study study) {
-		return InvestigationAttribute.STUDY_PUBLICATIONS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PUBMED_ID, study.getPublications(), o -> o.getPubmedID())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_DOI, study.getPublications(), o -> o.getDOI())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_AUTHOR_LIST, study.getPublications(), o -> o.getAuthors())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_TITLE, study.getPublications(), o -> o.getTitle())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_PUBLICATION_STATUS, study.getPublications(), p -> p.getStatus())
-			+ formatComments(study.getPublications());
+	/**
+	 * Count the sections rendered by the last incremental write
+	 */
+	private void countRenderedSections() {
+		this.sectionsRendered = 0;
+		for (SectionCache section : this.investigationSections)
+			if (section.wasRendered())
+				this.sectionsRendered++;
+		for (SectionCache[] studySections : this.studySections.values())
+			for (SectionCache section : studySections)
+				if (section.wasRendered())
+					this.sectionsRendered++;
+		logger.debug("{}: Rendered {} sections, the others were cached.", this, this.sectionsRendered);
+	}
+
+	/**
+	 * Format the block of a study into a buffer of its own
+	 *
+	 * @param study    the study
+	 * @param sections the caches of the sections of the study, null entries if
+	 *                 not writing incrementally
+	 * @return the encoded lines of the block
+	 */
+	private byte[] formatStudy(Study study, SectionCache[] sections) {
+		try {
+			return SectionCache.render(writer -> this.writeStudy(writer, study, sections));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	/**
@@ -489,6 +469,14 @@ public class Investigation implements Commentable {
 		return description;
 	}
 
+	/**
+	 * @return the number of threads formatting the study blocks in
+	 *         {@link #writeToStream(OutputStream)}
+	 */
+	public int getFormattingThreads() {
+		return this.formattingThreads;
+	}
+
 	/**
 	 * Aet id of invesigation
 	 *
@@ -498,6 +486,13 @@ public class Investigation implements Commentable {
 		return identifier;
 	}
 	
+	/**
+	 * @return the number of changes made by the setters and adders so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * Get all linked {@link Ontology}
 	 *
@@ -525,6 +520,14 @@ public class Investigation implements Commentable {
 		return publicReleaseDate;
 	}
 	
+	/**
+	 * @return the number of sections rendered by the last incremental write, the
+	 *         others were taken from the cache
+	 */
+	int getSectionsRendered() {
+		return this.sectionsRendered;
+	}
+
 	/**
 	 * Get studies of investigation
 	 *
@@ -552,6 +555,14 @@ public class Investigation implements Commentable {
 	public String getTitle() {
 		return title;
 	}
+
+	/**
+	 * @return whether the rendered sections are cached between writes, see
+	 *         {@link #setIncrementalWriting(boolean)}
+	 */
+	public boolean isIncrementalWriting() {
+		return this.investigationSections != null;
+	}
 	
 	/**
 	 * Set contact of investigation
@@ -561,6 +572,7 @@ public class Investigation implements Commentable {
 	public void setContacts(List<Person> contacts) {
 		contacts.stream().forEach(Objects::requireNonNull);
 		this.contacts = contacts;
+		this.modifications++;
 	}
 
 	/**
@@ -570,6 +582,23 @@ public class Investigation implements Commentable {
 	 */
 	public void setDescription(String description) {
 		this.description = StringUtil.sanitize(description);
+		this.modifications++;
+	}
+
+	/**
+	 * Sets the number of threads that format the study blocks in parallel when
+	 * the investigation is written. Every study is formatted into a buffer of its
+	 * own on a {@link ForkJoinPool} and the blocks are written in the order of the
+	 * studies, so the output is byte-identical to formatting them one after the
+	 * other. With one thread, the default, all studies are formatted by the
+	 * calling thread.
+	 * 
+	 * @param formattingThreads the number of threads, at least 1
+	 */
+	public void setFormattingThreads(int formattingThreads) {
+		if (formattingThreads < 1)
+			throw new IllegalArgumentException("At least one thread is needed for formatting");
+		this.formattingThreads = formattingThreads;
 	}
 
 	/**
@@ -579,6 +608,31 @@ public class Investigation implements Commentable {
 	 */
 	public void setIdentifier(String iD) {
 		identifier = StringUtil.sanitize(iD);
+		this.modifications++;
+	}
+
+	/**
+	 * Sets whether the investigation file is written incrementally. The encoded
+	 * lines of every section are then kept after a write, together with the
+	 * objects the section shows and the number of changes made to them by their
+	 * setters and adders. The next write renders only the sections whose objects
+	 * changed, or were added, removed or reordered in the lists returned by the
+	 * getters, and copies the cached bytes of all others, so the output is
+	 * byte-identical to a full write. Disabled by default, disabling it drops the
+	 * cached sections.
+	 * 
+	 * @param incrementalWriting true to cache the sections between writes
+	 */
+	public void setIncrementalWriting(boolean incrementalWriting) {
+		if (!incrementalWriting) {
+			this.investigationSections = null;
+			this.studySections = null;
+		} else if (this.investigationSections == null) {
+			this.investigationSections = new SectionCache[INVESTIGATION_SECTIONS];
+			for (int i = 0; i < INVESTIGATION_SECTIONS; i++)
+				this.investigationSections[i] = new SectionCache();
+			this.studySections = new IdentityHashMap<Study, SectionCache[]>();
+		}
 	}
 	
 	/**
@@ -589,6 +643,7 @@ public class Investigation implements Commentable {
 	public void setOntologies(List<Ontology> ontologies) {
 		ontologies.stream().forEach(Objects::requireNonNull);
 		this.ontologies = ontologies;
+		this.modifications++;
 	}
 	
 	/**
@@ -599,6 +654,7 @@ public class Investigation implements Commentable {
 	public void setPublications(List<Publication> publications) {
 		publications.stream().forEach(Objects::requireNonNull);
 		this.publications = publications;
+		this.modifications++;
 	}
 	
 	/**
@@ -608,6 +664,7 @@ public class Investigation implements Commentable {
 	 */
 	public void setPublicReleaseDate(LocalDate publicReleaseDate) {
 		this.publicReleaseDate = publicReleaseDate;
+		this.modifications++;
 	}
 	
 	/**
@@ -620,6 +677,7 @@ public class Investigation implements Commentable {
 		for (Study study : studies) {
 			this.addStudy(study);
 		}
+		this.modifications++;
 	}
 	
 	/**
@@ -629,6 +687,7 @@ public class Investigation implements Commentable {
 	 */
 	public void setSubmissionDate(LocalDate submissionDate) {
 		this.submissionDate = submissionDate;
+		this.modifications++;
 	}
 	
 	/**
@@ -638,6 +697,7 @@ public class Investigation implements Commentable {
 	 */
 	public void setTitle(String title) {
 		this.title = StringUtil.sanitize(title);
+		this.modifications++;
 	}
 	
 	@Override
@@ -645,32 +705,220 @@ public class Investigation implements Commentable {
 		return "<Investigation> '" + this.identifier + "'";
 	}
 	
+	private void writeInvestigationContacts(SectionWriter writer) throws IOException {
+		writer.section(InvestigationAttribute.INVESTIGATION_CONTACTS);
+		INVESTIGATION_CONTACTS.writeTo(writer, this.contacts);
+		writer.comments(this.contacts);
+	}
+
+	private void writeInvestigationHeaders(SectionWriter writer) throws IOException {
+		writer.section(InvestigationAttribute.INVESTIGATION);
+		INVESTIGATION_HEADERS.writeTo(writer, List.of(this));
+		writer.simpleComments(this.comments().getAll());
+	}
+
+	private void writeInvestigationPublications(SectionWriter writer) throws IOException {
+		writer.section(InvestigationAttribute.INVESTIGATION_PUBLICATIONS);
+		INVESTIGATION_PUBLICATIONS.writeTo(writer, this.publications);
+		writer.comments(this.publications);
+	}
+
+	private void writeOntologies(SectionWriter writer) throws IOException {
+		writer.section(InvestigationAttribute.ONTOLOGY_SOURCE_REFERENCE);
+		ONTOLOGIES.writeTo(writer, this.ontologies);
+	}
+
+	/**
+	 * Format the study blocks on a {@link ForkJoinPool} and write them in the
+	 * order of the studies. At most two blocks per thread are held in memory. No
+	 * worker outlives the call, also not after a failure.
+	 */
+	private void writeStudies(TableOutput output, List<SectionCache[]> sections) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(this.formattingThreads);
+		ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<ForkJoinTask<byte[]>>();
+		try {
+			int next = 0;
+			while (next < this.studies.size() || !pending.isEmpty()) {
+				while (next < this.studies.size() && pending.size() < 2 * this.formattingThreads) {
+					Study study = this.studies.get(next);
+					SectionCache[] studySections = sections.get(next++);
+					pending.add(pool.submit(() -> this.formatStudy(study, studySections)));
+				}
+				byte[] block;
+				try {
+					block = pending.poll().join();
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+				output.write(block, 0, block.length);
+			}
+		} finally {
+			// Blocks that are still formatted fill the caches of their sections, so they
+			// are awaited
+			for (ForkJoinTask<byte[]> task : pending)
+				task.cancel(true);
+			pool.shutdownNow();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Get the caches of the sections of every study, in the order of the studies.
+	 * The caches of studies that were removed from the investigation are dropped.
+	 *
+	 * @return null entries if not writing incrementally
+	 */
+	private List<SectionCache[]> studySections() {
+		List<SectionCache[]> sections = new ArrayList<SectionCache[]>(this.studies.size());
+		IdentityHashMap<Study, SectionCache[]> previous = this.studySections;
+		if (previous != null)
+			this.studySections = new IdentityHashMap<Study, SectionCache[]>();
+		for (Study study : this.studies) {
+			SectionCache[] studySections = new SectionCache[STUDY_SECTIONS];
+			// A study listed twice is written directly the second time, so no cache is
+			// shared by two threads
+			if (previous != null && !this.studySections.containsKey(study)) {
+				if (previous.containsKey(study)) {
+					studySections = previous.get(study);
+				} else {
+					for (int i = 0; i < STUDY_SECTIONS; i++)
+						studySections[i] = new SectionCache();
+				}
+				this.studySections.put(study, studySections);
+			}
+			sections.add(studySections);
+		}
+		return sections;
+	}
+
+	/**
+	 * @param sections the caches of the sections of the study, null entries if
+	 *                 not writing incrementally
+	 */
+	private void writeStudy(SectionWriter writer, Study study, SectionCache[] sections) throws IOException {
+		writeSection(writer, sections[0], () -> new SectionCache.Key().study(study),
+				w -> this.writeStudyHeaders(w, study));
+		writeSection(writer, sections[1],
+				() -> new SectionCache.Key().each(study.getPublications(), SectionCache.Key::publication),
+				w -> this.writeStudyPublications(w, study));
+		writeSection(writer, sections[2],
+				() -> new SectionCache.Key().each(study.getFactors(), SectionCache.Key::factor),
+				w -> this.writeStudyFactors(w, study));
+		writeSection(writer, sections[3],
+				() -> new SectionCache.Key().each(study.getAssays(), SectionCache.Key::assay),
+				w -> this.writeStudyAssays(w, study));
+		writeSection(writer, sections[4],
+				() -> new SectionCache.Key().each(study.getProtocols(), SectionCache.Key::protocol),
+				w -> this.writeStudyProtocols(w, study));
+		writeSection(writer, sections[5],
+				() -> new SectionCache.Key().each(study.getContacts(), SectionCache.Key::contact),
+				w -> this.writeStudyContacts(w, study));
+	}
+
+	private void writeStudyAssays(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY_ASSAYS);
+		STUDY_ASSAYS.writeTo(writer, study.getAssays());
+		writer.comments(study.getAssays());
+	}
+
+	private void writeStudyContacts(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY_CONTACTS);
+		STUDY_CONTACTS.writeTo(writer, study.getContacts());
+		writer.comments(study.getContacts());
+	}
+
+	private void writeStudyFactors(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY_FACTORS);
+		STUDY_FACTORS.writeTo(writer, study.getFactors());
+		writer.comments(study.getFactors());
+	}
+
+	private void writeStudyHeaders(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY);
+		STUDY_HEADERS.writeTo(writer, List.of(study));
+		writer.simpleComments(study.comments().getAll());
+		// STUDY DESIGN DESCRIPTORS
+		writer.section(InvestigationAttribute.STUDY_DESIGN_DESCRIPTORS);
+		STUDY_DESIGN_DESCRIPTORS.writeTo(writer, study.getDesignDescriptors());
+		writer.comments(study.getDesignDescriptors());
+	}
+
+	private void writeStudyProtocols(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY_PROTOCOLS);
+		STUDY_PROTOCOLS.writeTo(writer, study.getProtocols());
+		writer.comments(study.getProtocols());
+	}
+
+	private void writeStudyPublications(SectionWriter writer, Study study) throws IOException {
+		writer.section(InvestigationAttribute.STUDY_PUBLICATIONS);
+		STUDY_PUBLICATIONS.writeTo(writer, study.getPublications());
+		writer.comments(study.getPublications());
+	}
+
 	public void writeToFile(String filepath) throws IOException {
+		this.writeToFile(filepath, Compression.NONE);
+	}
+	
+	/**
+	 * Write the investigation file, compressed with the given compression
+	 * 
+	 * @param filepath    the path of the file, should end with ".gz" if compressed
+	 * @param compression the compression
+	 * @throws IOException if the file can't be written
+	 */
+	public void writeToFile(String filepath, Compression compression) throws IOException {
 		logger.debug("{}: Directing output to file '{}'", this, filepath);
-		OutputStream os = new FileOutputStream(filepath);
-		this.writeToStream(os);
-		os.close();
+		try (OutputStream file = new FileOutputStream(filepath);
+				OutputStream os = compression.wrap(file, Props.DEFAULT_BUFFER_SIZE)) {
+			this.writeToStream(os);
+		}
 	}
 	
+	/**
+	 * Write the investigation file to a stream, which is not closed. The lines are
+	 * written cell by cell into a buffer, so no section is held in memory as a
+	 * whole. With more than one formatting thread, the study blocks are formatted
+	 * in parallel, see {@link #setFormattingThreads(int)}. When writing
+	 * incrementally, only sections that changed since the last write are
+	 * rendered, see {@link #setIncrementalWriting(boolean)}.
+	 * 
+	 * @param os the stream to write to
+	 * @throws IOException if the stream can't be written
+	 */
 	public void writeToStream(OutputStream os) throws IOException {
 		logger.debug("{}: Start writing output.", this);
-		OutputStreamWriter writer = new OutputStreamWriter(os, Props.DEFAULT_CHARSET);
-		
-		writer.write(formatOntologies());
-		writer.write(formatInvestigationHeaders());
-		writer.write(formatInvestigationPublications());
-		writer.write(formatInvestigationContacts());
-			
-		for(Study study: this.studies) {
-			writer.write(formatStudyHeaders(study));
-			writer.write(formatStudyPublications(study));
-			writer.write(formatStudyFactors(study));
-			writer.write(formatStudyAssays(study));
-			writer.write(formatStudyProtocols(study));
-			writer.write(formatStudyContacts(study));
+		TableOutput output = new BufferedTableOutput(os, Props.DEFAULT_BUFFER_SIZE);
+		SectionWriter writer = new SectionWriter(output);
+		SectionCache[] sections = this.isIncrementalWriting() ? this.investigationSections
+				: new SectionCache[INVESTIGATION_SECTIONS];
+
+		writeSection(writer, sections[0],
+				() -> new SectionCache.Key().each(this.ontologies, SectionCache.Key::ontology),
+				this::writeOntologies);
+		writeSection(writer, sections[1], () -> new SectionCache.Key().investigation(this),
+				this::writeInvestigationHeaders);
+		writeSection(writer, sections[2],
+				() -> new SectionCache.Key().each(this.publications, SectionCache.Key::publication),
+				this::writeInvestigationPublications);
+		writeSection(writer, sections[3],
+				() -> new SectionCache.Key().each(this.contacts, SectionCache.Key::contact),
+				this::writeInvestigationContacts);
+
+		List<SectionCache[]> studySections = this.studySections();
+		if (this.formattingThreads > 1 && this.studies.size() > 1) {
+			this.writeStudies(output, studySections);
+		} else {
+			for (int i = 0; i < this.studies.size(); i++)
+				this.writeStudy(writer, this.studies.get(i), studySections.get(i));
 		}
-			
-		writer.flush();
+
+		output.flush();
+		if (this.isIncrementalWriting())
+			this.countRenderedSections();
 		logger.debug("{}: Finished writing output.", this);
 	}
 
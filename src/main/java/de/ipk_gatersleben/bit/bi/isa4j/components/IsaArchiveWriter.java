@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes an {@link Investigation} and the lines of its {@link Study} and
+ * {@link Assay} files into one ZIP archive in a single pass, instead of
+ * writing every file on its own and zipping them afterwards. The lines of
+ * every table are written by a {@link TableContent} on a pool of threads, all
+ * tables at the same time, each into a buffer of its own. The buffers are kept
+ * in memory up to {@link #MEMORY_PER_TABLE} bytes and continue in a temporary
+ * file beyond that. The calling thread writes the investigation file and then
+ * copies the tables into the archive in the order they were added:
+ *
+ * <pre>
+ * IsaArchiveWriter archive = new IsaArchiveWriter(investigation, "i_investigation.txt");
+ * archive.add(study, file -> {
+ * 	for (...)
+ * 		file.writeLine(source);
+ * });
+ * archive.writeToFile("isa.zip");
+ * </pre>
+ *
+ * The entries of the archive are named after {@link WideTableFile#getFileName()}.
+ * <br>
+ * <br>
+ * <b>NOTE: The table contents run at the same time on different threads and
+ * must build their lines from objects of their own, see
+ * {@link FanOutWriter}.</b>
+ */
+public class IsaArchiveWriter {
+
+	/**
+	 * Writes the lines of one table
+	 */
+	@FunctionalInterface
+	public interface TableContent {
+
+		/**
+		 * Write the lines with {@link WideTableFile#writeLine(StudyOrAssayTableObject)}
+		 * or any of the other write methods. The output of the file is set before and
+		 * released after.
+		 *
+		 * @param file the study or assay to write
+		 * @throws IOException if a line can't be written
+		 */
+		void writeTo(WideTableFile file) throws IOException;
+	}
+
+	private static final class Table {
+
+		private final TableContent content;
+
+		private final WideTableFile file;
+
+		private Table(WideTableFile file, TableContent content) {
+			this.file = file;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Keeps the stream of the caller open when the archive is closed
+	 */
+	private static final class UnclosedOutputStream extends FilterOutputStream {
+
+		private UnclosedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+		}
+	}
+
+	/**
+	 * Number of bytes of each table that are kept in memory before continuing in
+	 * a temporary file
+	 */
+	public static final long MEMORY_PER_TABLE = 1 << 24;
+
+	/**
+	 * Spill a table into a buffer and free the buffer if that fails
+	 */
+	private static SpillBuffer spill(Table table, SpillBuffer buffer) throws IOException {
+		try {
+			table.file.setOutputStream(buffer);
+			try {
+				table.content.writeTo(table.file);
+			} finally {
+				table.file.releaseStream();
+			}
+			return buffer;
+		} catch (IOException | RuntimeException | Error e) {
+			buffer.delete();
+			throw e;
+		}
+	}
+
+	private static SpillBuffer waitFor(Future<SpillBuffer> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a table to be written");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private final Investigation investigation;
+
+	private final String investigationFileName;
+
+	private final Logger logger = LoggerFactory.getLogger(IsaArchiveWriter.class);
+
+	private final List<Table> tables = new ArrayList<Table>();
+
+	/**
+	 * Number of tables that are written at the same time
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param investigation         the investigation
+	 * @param investigationFileName the name of its entry in the archive, e.g.
+	 *                              "i_investigation.txt"
+	 */
+	public IsaArchiveWriter(Investigation investigation, String investigationFileName) {
+		this.investigation = Objects.requireNonNull(investigation, "Investigation cannot be null");
+		this.investigationFileName = Objects.requireNonNull(investigationFileName,
+				"Investigation file name cannot be null");
+	}
+
+	/**
+	 * Add a table to the archive.
+	 *
+	 * @param file    the study or assay, can only be added once and must not have
+	 *                an output while the archive is written
+	 * @param content writes the lines of the table
+	 */
+	public void add(WideTableFile file, TableContent content) {
+		Objects.requireNonNull(file, "File cannot be null");
+		Objects.requireNonNull(content, "Table content cannot be null");
+		for (Table table : this.tables) {
+			if (table.file == file)
+				throw new IllegalArgumentException(file + " was already added");
+			if (table.file.getFileName().equals(file.getFileName()))
+				throw new IllegalArgumentException("There is already an entry named " + file.getFileName());
+		}
+		if (file.getFileName().equals(this.investigationFileName))
+			throw new IllegalArgumentException("There is already an entry named " + file.getFileName());
+		this.tables.add(new Table(file, content));
+	}
+
+	/**
+	 * @return the number of tables that are written at the same time
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * @param threads the number of tables that are written at the same time, at
+	 *                least 1
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed for writing tables");
+		this.threads = threads;
+	}
+
+	/**
+	 * Write the archive to a file.
+	 *
+	 * @param filepath the path of the archive
+	 * @throws IOException if the archive or any table can't be written
+	 */
+	public void writeToFile(String filepath) throws IOException {
+		logger.debug("{}: Directing archive to file '{}'", this.investigation, filepath);
+		try (OutputStream os = new FileOutputStream(filepath)) {
+			this.writeToStream(os);
+		}
+	}
+
+	/**
+	 * Write the archive to a stream, which is not closed. Stops at the first
+	 * exception of any table, in which case the archive is incomplete. The tables
+	 * that are still written are interrupted, and the method returns only after
+	 * they stopped and all buffers were freed.
+	 *
+	 * @param os the stream to write the archive to
+	 * @throws IOException if the archive or any table can't be written
+	 */
+	public void writeToStream(OutputStream os) throws IOException {
+		logger.debug("{}: Start writing archive with {} tables.", this.investigation, this.tables.size());
+		ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+			Thread thread = defaultFactory.newThread(runnable);
+			thread.setName("isa4j-" + thread.getName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Created here, so that they are known even if a table is cancelled
+		List<SpillBuffer> buffers = new ArrayList<SpillBuffer>();
+		List<Future<SpillBuffer>> pending = new ArrayList<Future<SpillBuffer>>();
+		int written = 0;
+		try {
+			for (Table table : this.tables) {
+				SpillBuffer buffer = new SpillBuffer(MEMORY_PER_TABLE);
+				buffers.add(buffer);
+				pending.add(executor.submit(() -> spill(table, buffer)));
+			}
+
+			// Closing the archive finishes it and frees its deflater
+			try (ZipOutputStream zip = new ZipOutputStream(new UnclosedOutputStream(os))) {
+				zip.putNextEntry(new ZipEntry(this.investigationFileName));
+				this.investigation.writeToStream(zip);
+				zip.closeEntry();
+				for (; written < this.tables.size(); written++) {
+					SpillBuffer buffer = waitFor(pending.get(written));
+					try {
+						zip.putNextEntry(new ZipEntry(this.tables.get(written).file.getFileName()));
+						buffer.copyTo(zip);
+						zip.closeEntry();
+					} finally {
+						buffer.delete();
+					}
+				}
+			}
+		} finally {
+			// After a failure, stop the tables that are still written and free all
+			// buffers that weren't copied, once no thread writes into them anymore
+			for (int i = written; i < pending.size(); i++)
+				pending.get(i).cancel(true);
+			executor.shutdownNow();
+			boolean interrupted = false;
+			while (!executor.isTerminated()) {
+				try {
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			for (int i = written; i < buffers.size(); i++) {
+				try {
+					buffers.get(i).delete();
+				} catch (IOException e) {
+					logger.warn("{}: Could not delete the buffer of {}.", this.investigation,
+							this.tables.get(i).file, e);
+				}
+			}
+		}
+		logger.debug("{}: Finished writing archive.", this.investigation);
+	}
+
+}
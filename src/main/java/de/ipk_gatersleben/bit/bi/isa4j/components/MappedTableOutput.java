@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Encodes everything that is written directly into memory mapped regions of a
+ * file, so the operating system takes care of writing it back and no copy
+ * through a user space buffer is needed. Whenever a region is full the next
+ * one is mapped behind it, twice as large as the last one up to
+ * {@link #MAX_REGION_SIZE}. As mapping a region extends the file to its end,
+ * the file is truncated to what was actually written when it is closed.
+ */
+final class MappedTableOutput extends TableOutput {
+
+	/**
+	 * Regions don't grow beyond 256 MiB
+	 */
+	static final int MAX_REGION_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+
+	/**
+	 * Position of the current region in the file
+	 */
+	private long regionStart = 0;
+
+	/**
+	 * @param channel    the file to write to, opened for reading and writing
+	 * @param regionSize the size of the first region in bytes
+	 * @throws IOException if the first region can't be mapped
+	 */
+	MappedTableOutput(FileChannel channel, int regionSize) throws IOException {
+		super(channel.map(MapMode.READ_WRITE, 0, Math.max(regionSize, MIN_BUFFER_SIZE)));
+		this.channel = channel;
+	}
+
+	/**
+	 * Truncates the file to the written length and closes it. Mapped regions stay
+	 * valid until they are garbage collected, but they are not written to anymore.
+	 */
+	@Override
+	void close() throws IOException {
+		try {
+			this.channel.truncate(this.length());
+		} finally {
+			this.buffer = null;
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Map the next region, right behind what was written into the current one
+	 */
+	@Override
+	void drain() throws IOException {
+		long size = Math.min(2L * this.buffer.capacity(), MAX_REGION_SIZE);
+		this.regionStart += this.buffer.position();
+		this.buffer = this.channel.map(MapMode.READ_WRITE, this.regionStart, size);
+	}
+
+	/**
+	 * Forces the current region to the storage device. Regions before it are
+	 * written back by the operating system.
+	 */
+	@Override
+	void flush() throws IOException {
+		((MappedByteBuffer) this.buffer).force();
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	long length() {
+		return this.regionStart + this.buffer.position();
+	}
+
+	/**
+	 * Like {@link #close()}. The file was opened for this output and nobody else
+	 * could truncate or close it later.
+	 */
+	@Override
+	void release() throws IOException {
+		this.close();
+	}
+
+}
@@ -7,10 +7,8 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -28,13 +26,10 @@ public class Material extends Source {
 		this.setType(type);
 	}
 
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(this.type, new String[]{this.name});
-		fields.putAll(this.getFieldsForCharacteristics());
-
-		return fields;
+	void emitFields(RowSink sink) {
+		sink.field(this.type);
+		sink.cell(this.name);
+		this.emitFieldsForCharacteristics(sink);
 	}
 
 	LinkedHashMap<String, String[]> getHeaders() {
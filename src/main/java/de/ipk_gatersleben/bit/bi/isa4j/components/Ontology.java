@@ -24,6 +24,12 @@ public class Ontology {
      */
     private String description;
 
+    /**
+     * Counts the changes made by the setters, so that cached cells and cached
+     * sections of an investigation file can be recognized as outdated
+     */
+    private int modifications = 0;
+
     /**
      * name of the {@link Ontology}
      */
@@ -64,6 +70,13 @@ public class Ontology {
         return description;
     }
 
+    /**
+     * @return the number of changes made by the setters so far
+     */
+    int getModifications() {
+        return modifications;
+    }
+
     /**
      * get the name of the {@link Ontology}
      *
@@ -98,6 +111,7 @@ public class Ontology {
      */
     public void setDescription(String description) {
         this.description = StringUtil.sanitize(description);
+        this.modifications++;
     }
 
     /**
@@ -107,6 +121,7 @@ public class Ontology {
      */
     public void setName(String name) {
         this.name = StringUtil.sanitize(Objects.requireNonNull(name, "Ontology Name cannot be null"));
+        this.modifications++;
     }
 
     /**
@@ -116,6 +131,7 @@ public class Ontology {
      */
     public void setURL(URL url) {
         this.url = url;
+        this.modifications++;
     }
 
     /**
@@ -125,6 +141,7 @@ public class Ontology {
      */
     public void setVersion(String version) {
         this.version = StringUtil.sanitize(version);
+        this.modifications++;
     }
     
 	@Override
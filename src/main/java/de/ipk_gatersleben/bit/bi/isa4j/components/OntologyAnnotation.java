@@ -21,6 +21,12 @@ public class OntologyAnnotation implements Commentable {
 	
 	private CommentCollection comments = new CommentCollection();
 	
+	/**
+	 * Counts the changes made by the setters, so that cached cells can be
+	 * recognized as outdated
+	 */
+	private int modifications = 0;
+	
 	/**
      * sourceREF of ontology term
      */
@@ -51,6 +57,13 @@ public class OntologyAnnotation implements Commentable {
 	}
    
 
+    /**
+     * @return the number of changes made by the setters so far
+     */
+    int getModifications() {
+        return modifications;
+    }
+
     /**
      * get sourceREF
      *
@@ -85,6 +98,7 @@ public class OntologyAnnotation implements Commentable {
      */
     public void setSourceREF(Ontology sourceREF) {
         this.sourceREF = sourceREF;
+        this.modifications++;
     }
 
     /**
@@ -94,6 +108,7 @@ public class OntologyAnnotation implements Commentable {
      */
     public void setTerm(String term) {
         this.term = StringUtil.sanitize(Objects.requireNonNull(term));
+        this.modifications++;
     }
 
     /**
@@ -103,6 +118,7 @@ public class OntologyAnnotation implements Commentable {
      */
     public void setTermAccession(String termAccession) {
         this.termAccession = StringUtil.sanitize(termAccession);
+        this.modifications++;
     }
     
 	@Override
@@ -58,6 +58,12 @@ public class Person implements Commentable {
 	 */
 	private String midInitials;
 
+	/**
+	 * Counts the changes made by the setters and adders, so that cached sections
+	 * of an investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	/**
 	 * A phone number for the {@link Person}
 	 */
@@ -78,6 +84,7 @@ public class Person implements Commentable {
 
 	public void addRole(OntologyAnnotation role) {
 		this.roles.add(Objects.requireNonNull(role, "Role cannot be null"));
+		this.modifications++;
 	}
 
 
@@ -148,6 +155,13 @@ public class Person implements Commentable {
 		return this.midInitials;
 	}
 
+	/**
+	 * @return the number of changes made by the setters and adders so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * Get phone number of the {@link Person}
 	 *
@@ -173,6 +187,7 @@ public class Person implements Commentable {
 	 */
 	public void setAddress(String address) {
 		this.address = StringUtil.sanitize(address);
+		this.modifications++;
 	}
 
 	/**
@@ -182,6 +197,7 @@ public class Person implements Commentable {
 	 */
 	public void setAffiliation(String affiliation) {
 		this.affiliation = StringUtil.sanitize(affiliation);
+		this.modifications++;
 	}
 
 	/**
@@ -191,6 +207,7 @@ public class Person implements Commentable {
 	 */
 	public void setEmail(String email) {
 		this.email = StringUtil.sanitize(email);
+		this.modifications++;
 	}
 
 	/**
@@ -200,6 +217,7 @@ public class Person implements Commentable {
 	 */
 	public void setFax(String fax) {
 		this.fax = StringUtil.sanitize(fax);
+		this.modifications++;
 	}
 
 	/**
@@ -209,6 +227,7 @@ public class Person implements Commentable {
 	 */
 	public void setFirstName(String firstName) {
 		this.firstName = StringUtil.sanitize(firstName);
+		this.modifications++;
 	}
 
 	/**
@@ -218,6 +237,7 @@ public class Person implements Commentable {
 	 */
 	public void setLastName(String lastName) {
 		this.lastName = StringUtil.sanitize(lastName);
+		this.modifications++;
 	}
 
 	/**
@@ -227,6 +247,7 @@ public class Person implements Commentable {
 	 */
 	public void setMidInitials(String midInitials) {
 		this.midInitials = StringUtil.sanitize(midInitials);
+		this.modifications++;
 	}
 	
 	/**
@@ -236,6 +257,7 @@ public class Person implements Commentable {
 	 */
 	public void setPhone(String phone) {
 		this.phone = StringUtil.sanitize(phone);
+		this.modifications++;
 	}
 
 	/**
@@ -246,6 +268,7 @@ public class Person implements Commentable {
 	public void setRoles(List<OntologyAnnotation> roles) {
 		roles.stream().forEach(Objects::requireNonNull);
 		this.roles = roles;
+		this.modifications++;
 	}
 	
 	@Override
@@ -10,10 +10,8 @@ package de.ipk_gatersleben.bit.bi.isa4j.components;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
@@ -49,6 +47,21 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 		return this.comments;
 	}
 
+	void emitFields(RowSink sink) {
+		sink.field(StudyAssayAttribute.PROTOCOL.toString());
+		sink.cell(this.protocol.getName());
+		this.emitFieldsForValues(StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
+				pv -> pv.getCategory().getName().getTerm(), sink);
+		if (this.dateTime != null) {
+			sink.field(StudyAssayAttribute.PROTOCOL_DATE.toString());
+			sink.cell(this.dateTime.toString());
+		} else if (this.date != null) {
+			sink.field(StudyAssayAttribute.PROTOCOL_DATE.toString());
+			sink.cell(this.date.toString());
+		}
+		this.emitFieldsForComments(this.comments, sink);
+	}
+
 	/**
 	 * @return the date
 	 */
@@ -63,21 +76,6 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 		return dateTime;
 	}
 
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-
-		fields.put(StudyAssayAttribute.PROTOCOL.toString(), new String[] { this.protocol.getName() });
-		fields.putAll(this.getFieldsForValues(StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
-				pv -> pv.getCategory().getName().getTerm()));
-		if (this.dateTime != null)
-			fields.put(StudyAssayAttribute.PROTOCOL_DATE.toString(), new String[] { this.dateTime.toString() });
-		else if (this.date != null)
-			fields.put(StudyAssayAttribute.PROTOCOL_DATE.toString(), new String[] { this.date.toString() });
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
-	}
-
 	LinkedHashMap<String, String[]> getHeaders() {
 		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
 
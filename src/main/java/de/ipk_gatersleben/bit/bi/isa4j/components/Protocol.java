@@ -31,6 +31,12 @@ public class Protocol implements Commentable {
      */
     private String description;
 
+    /**
+     * Counts the changes made by the setters and adders, so that cached sections
+     * of an investigation file can be recognized as outdated
+     */
+    private int modifications = 0;
+
     /**
      * The name of the {@link Protocol}
      */
@@ -77,6 +83,7 @@ public class Protocol implements Commentable {
 	public void addComponent(ProtocolComponent component) {
 		Objects.requireNonNull(component);
 		this.components.add(component);
+		this.modifications++;
 	}
 	
 	/**
@@ -90,6 +97,7 @@ public class Protocol implements Commentable {
     		throw new RedundantItemException("Parameter not unique: " + parameter.getName());
 
         this.parameters.add(parameter);
+        this.modifications++;
     }
 
 	public CommentCollection comments() {
@@ -113,6 +121,13 @@ public class Protocol implements Commentable {
     }
 
 
+    /**
+     * @return the number of changes made by the setters and adders so far
+     */
+    int getModifications() {
+        return this.modifications;
+    }
+
     /**
      * Get the name of the{@link Protocol}
      *
@@ -164,6 +179,7 @@ public class Protocol implements Commentable {
 	public void setComponents(List<ProtocolComponent> components) {
 		components.stream().forEach(Objects::requireNonNull);
 		this.components = components;
+		this.modifications++;
 	}
 
     /**
@@ -173,6 +189,7 @@ public class Protocol implements Commentable {
      */
     public void setDescription(String description) {
         this.description = StringUtil.sanitize(description);
+        this.modifications++;
     }
 
     /**
@@ -182,6 +199,7 @@ public class Protocol implements Commentable {
      */
     public void setName(String name) {
         this.name = StringUtil.sanitize(Objects.requireNonNull(name, "Protocol Name cannot be null"));
+        this.modifications++;
     }
 
     /**
@@ -192,6 +210,7 @@ public class Protocol implements Commentable {
     public void setParameters(List<ProtocolParameter> parameters) {
     	parameters.stream().forEach(Objects::requireNonNull);
         this.parameters = parameters;
+        this.modifications++;
     }
 
     /**
@@ -201,6 +220,7 @@ public class Protocol implements Commentable {
      */
     public void setType(OntologyAnnotation typeOntology) {
         this.type = typeOntology;
+        this.modifications++;
     }
 
     /**
@@ -210,6 +230,7 @@ public class Protocol implements Commentable {
      */
     public void setURI(String uri) {
         URI = StringUtil.sanitize(uri);
+        this.modifications++;
     }
 
     /**
@@ -219,6 +240,7 @@ public class Protocol implements Commentable {
      */
     public void setVersion(String version) {
         this.version = StringUtil.sanitize(version);
+        this.modifications++;
     }
     
 	@Override
@@ -11,6 +11,12 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public class ProtocolComponent {
 	
+	/**
+	 * Counts the changes made by the setters, so that cached sections of an
+	 * investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	private String name;
 	private OntologyAnnotation type;
 	
@@ -23,6 +29,13 @@ public class ProtocolComponent {
 		this.type = type;
 	}
 
+	/**
+	 * @return the number of changes made by the setters so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -42,6 +55,7 @@ public class ProtocolComponent {
 	 */
 	public void setName(String name) {
 		this.name = StringUtil.sanitize(name);
+		this.modifications++;
 	}
 
 	/**
@@ -49,6 +63,7 @@ public class ProtocolComponent {
 	 */
 	public void setType(OntologyAnnotation type) {
 		this.type = type;
+		this.modifications++;
 	}
 	
 	@Override
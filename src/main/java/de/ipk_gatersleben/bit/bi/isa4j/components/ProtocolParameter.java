@@ -11,6 +11,12 @@ import java.util.Objects;
 
 public class ProtocolParameter {
 	
+	/**
+	 * Counts the changes made by the setters, so that cached sections of an
+	 * investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
 	private OntologyAnnotation name;
 
 	public ProtocolParameter(OntologyAnnotation name) {
@@ -21,6 +27,13 @@ public class ProtocolParameter {
 		this(new OntologyAnnotation(name, null, null));
 	}
 
+	/**
+	 * @return the number of changes made by the setters so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -33,6 +46,7 @@ public class ProtocolParameter {
 	 */
 	public void setName(OntologyAnnotation name) {
 		this.name = Objects.requireNonNull(name, "ProtocolParameter name OntologyAnnotation object cannot be null");
+		this.modifications++;
 	}
 	
 	@Override
@@ -32,6 +32,12 @@ public class Publication implements Commentable {
      */
     private String doi;
 
+    /**
+     * Counts the changes made by the setters and adders, so that cached sections
+     * of an investigation file can be recognized as outdated
+     */
+    private int modifications = 0;
+
     /**
      * The PubMed ID of this {@link Publication}
      */
@@ -81,6 +87,13 @@ public class Publication implements Commentable {
         return this.doi;
     }
 
+    /**
+     * @return the number of changes made by the setters and adders so far
+     */
+    int getModifications() {
+        return this.modifications;
+    }
+
     /**
      * Get the ID of the {@link Publication}
      *
@@ -115,6 +128,7 @@ public class Publication implements Commentable {
      */
     public void setAuthors(String authors) {
         this.authors = StringUtil.sanitize(authors);
+        this.modifications++;
     }
 
     /**
@@ -124,6 +138,7 @@ public class Publication implements Commentable {
      */
     public void setDOI(String doi) {
         this.doi = StringUtil.sanitize(doi);
+        this.modifications++;
     }
 
     /**
@@ -133,6 +148,7 @@ public class Publication implements Commentable {
      */
     public void setPubmedID(String pubmedID) {
         this.pubmedID = StringUtil.sanitize(pubmedID);
+        this.modifications++;
     }
 
     /**
@@ -142,6 +158,7 @@ public class Publication implements Commentable {
      */
     public void setStatus(OntologyAnnotation status) {
         this.status = status;
+        this.modifications++;
     }
 
     /**
@@ -151,6 +168,7 @@ public class Publication implements Commentable {
      */
     public void setTitle(String title) {
         this.title = StringUtil.sanitize(Objects.requireNonNull(title, "Publication title cannot be null"));
+        this.modifications++;
     }
     
 	@Override
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+/**
+ * The 128-bit MurmurHash3 (x64 variant, seed 0) of a line, computed while the
+ * line is fed in pieces. Characters are hashed as their UTF-8 encoding, the
+ * same bytes the {@link TableOutput} writes for them, so a line hashes the same
+ * whether it is fed as characters or as encoded bytes. Not thread-safe, every
+ * thread needs a hash of its own.
+ */
+final class RowHash {
+
+	private static final long C1 = 0x87c37b91114253d5L;
+
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Number of bytes of the current block
+	 */
+	private int buffered;
+
+	private long h1;
+
+	private long h2;
+
+	/**
+	 * The bytes of the current block, in little-endian order
+	 */
+	private long k1;
+
+	private long k2;
+
+	/**
+	 * Number of bytes hashed
+	 */
+	private long length;
+
+	/**
+	 * Finish the hash of everything fed since the last {@link #reset()}. Nothing
+	 * can be fed afterwards until the hash is reset.
+	 *
+	 * @return the 128-bit hash as two longs, the first one is the lower half
+	 */
+	long[] finish() {
+		long h1 = this.h1;
+		long h2 = this.h2;
+		if (this.buffered > 8) {
+			long k2 = this.k2 * C2;
+			k2 = Long.rotateLeft(k2, 33);
+			h2 ^= k2 * C1;
+		}
+		if (this.buffered > 0) {
+			long k1 = this.k1 * C1;
+			k1 = Long.rotateLeft(k1, 31);
+			h1 ^= k1 * C2;
+		}
+		h1 ^= this.length;
+		h2 ^= this.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = mix(h1);
+		h2 = mix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	/**
+	 * @return the number of bytes hashed since the last {@link #reset()}, i.e. the
+	 *         length of the encoded line
+	 */
+	long length() {
+		return this.length;
+	}
+
+	/**
+	 * Mix a complete block of 16 bytes into the hash
+	 */
+	private void mixBlock() {
+		long k1 = this.k1 * C1;
+		k1 = Long.rotateLeft(k1, 31);
+		this.h1 ^= k1 * C2;
+		this.h1 = Long.rotateLeft(this.h1, 27) + this.h2;
+		this.h1 = this.h1 * 5 + 0x52dce729;
+
+		long k2 = this.k2 * C2;
+		k2 = Long.rotateLeft(k2, 33);
+		this.h2 ^= k2 * C1;
+		this.h2 = Long.rotateLeft(this.h2, 31) + this.h1;
+		this.h2 = this.h2 * 5 + 0x38495ab5;
+
+		this.k1 = 0;
+		this.k2 = 0;
+		this.buffered = 0;
+	}
+
+	/**
+	 * Start a new hash
+	 */
+	void reset() {
+		this.buffered = 0;
+		this.h1 = 0;
+		this.h2 = 0;
+		this.k1 = 0;
+		this.k2 = 0;
+		this.length = 0;
+	}
+
+	/**
+	 * Feed encoded bytes
+	 *
+	 * @param bytes  the bytes
+	 * @param offset the offset of the first byte to feed
+	 * @param length the number of bytes to feed
+	 */
+	void update(byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			this.update(bytes[i]);
+	}
+
+	/**
+	 * Feed characters as their UTF-8 encoding. Like the encoder of the
+	 * {@link TableOutput}, a surrogate without its other half is encoded as '?'.
+	 *
+	 * @param chars the characters
+	 * @param from  the index of the first character to feed
+	 * @param to    the index after the last character to feed
+	 */
+	void update(CharSequence chars, int from, int to) {
+		for (int i = from; i < to; i++) {
+			char c = chars.charAt(i);
+			if (c < 0x80) {
+				this.update((byte) c);
+			} else if (c < 0x800) {
+				this.update((byte) (0xc0 | c >> 6));
+				this.update((byte) (0x80 | c & 0x3f));
+			} else if (!Character.isSurrogate(c)) {
+				this.update((byte) (0xe0 | c >> 12));
+				this.update((byte) (0x80 | c >> 6 & 0x3f));
+				this.update((byte) (0x80 | c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+				this.update((byte) (0xf0 | codePoint >> 18));
+				this.update((byte) (0x80 | codePoint >> 12 & 0x3f));
+				this.update((byte) (0x80 | codePoint >> 6 & 0x3f));
+				this.update((byte) (0x80 | codePoint & 0x3f));
+			} else {
+				this.update((byte) '?');
+			}
+		}
+	}
+
+	private void update(byte b) {
+		long value = b & 0xffL;
+		if (this.buffered < 8)
+			this.k1 |= value << (this.buffered << 3);
+		else
+			this.k2 |= value << ((this.buffered - 8) << 3);
+		this.length++;
+		if (++this.buffered == 16)
+			this.mixBlock();
+	}
+
+}
@@ -0,0 +1,363 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Formats rows on a pool of worker threads while the calling thread writes the
+ * formatted rows to the {@link TableOutput} in input order.
+ *
+ * Rows are taken from the input in chunks of {@link #ROWS_PER_CHUNK}. Every
+ * chunk is formatted and encoded by one worker, using a {@link RowPlan.Formatter}
+ * of its own, and the writer waits for the chunks in the order they were
+ * submitted. At most two chunks per worker are in flight, so rows are pulled
+ * from the input only as fast as they can be written.
+ *
+ * Rows that are already in memory as a {@link List} are formatted with a
+ * {@link ForkJoinPool} instead, see {@link #write(List, TableOutput)}.
+ *
+ * If a row cannot be formatted, the rows before it are still written and the
+ * exception is thrown by the write methods, just like a loop over
+ * {@link WideTableFile#writeLine(StudyOrAssayTableObject)} would.
+ *
+ * The worker threads are started by the first write and reused by the
+ * following ones, until the pipeline is closed.
+ */
+final class RowPipeline {
+
+	/**
+	 * The encoded rows of one chunk and the exception that stopped formatting it,
+	 * if any. If the rows are deduplicated, the chunk also holds the
+	 * {@link RowHash} of every row and where it ends.
+	 */
+	static final class Chunk {
+
+		final byte[] bytes;
+
+		/**
+		 * Offset after the last byte of every row, null if the rows were not hashed
+		 */
+		final int[] ends;
+
+		final RuntimeException failure;
+
+		/**
+		 * The two halves of the hash of every row, null if the rows were not hashed
+		 */
+		final long[] hashes;
+
+		final int rows;
+
+		private Chunk(byte[] bytes, int rows, long[] hashes, int[] ends, RuntimeException failure) {
+			this.bytes = bytes;
+			this.rows = rows;
+			this.hashes = hashes;
+			this.ends = ends;
+			this.failure = failure;
+		}
+
+		/**
+		 * Write the rows of this chunk, except for those the filter recognizes as
+		 * duplicates, and throw the exception of the failed row, if there was one.
+		 *
+		 * @param output the output to write to
+		 * @param filter the filter of the output, null to write all rows
+		 * @return the number of rows written
+		 * @throws IOException if writing fails
+		 */
+		int writeTo(TableOutput output, DuplicateRowFilter filter) throws IOException {
+			int written = this.rows;
+			if (filter == null) {
+				output.write(this.bytes, 0, this.bytes.length);
+			} else {
+				// Consecutive new rows are written at once
+				int start = 0;
+				for (int i = 0; i < this.rows; i++) {
+					if (!filter.add(this.hashes[2 * i], this.hashes[2 * i + 1])) {
+						int rowStart = i == 0 ? 0 : this.ends[i - 1];
+						output.write(this.bytes, start, rowStart - start);
+						start = this.ends[i];
+						written--;
+					}
+				}
+				output.write(this.bytes, start, this.bytes.length - start);
+			}
+			if (this.failure != null)
+				throw this.failure;
+			return written;
+		}
+	}
+
+	/**
+	 * Formats a range of chunks of a list, by splitting it in halves until only a
+	 * single chunk is left.
+	 */
+	private final class FormatTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Chunk[] chunks;
+
+		private final int end;
+
+		private final int first;
+
+		private final int last;
+
+		private final List<? extends StudyOrAssayTableObject> rows;
+
+		private final int start;
+
+		/**
+		 * @param rows   all rows
+		 * @param start  index of the row the first chunk of the chunks array starts
+		 *               with
+		 * @param end    index after the last row that belongs to the chunks array
+		 * @param chunks where the formatted chunks are stored
+		 * @param first  index of the first chunk to format
+		 * @param last   index after the last chunk to format
+		 */
+		private FormatTask(List<? extends StudyOrAssayTableObject> rows, int start, int end, Chunk[] chunks,
+				int first, int last) {
+			this.rows = rows;
+			this.start = start;
+			this.end = end;
+			this.chunks = chunks;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.last - this.first == 1) {
+				int from = this.start + this.first * ROWS_PER_CHUNK;
+				this.chunks[this.first] = format(formatters.get(), this.rows, from,
+						Math.min(from + ROWS_PER_CHUNK, this.end), filter != null);
+			} else {
+				int middle = (this.first + this.last) >>> 1;
+				invokeAll(new FormatTask(this.rows, this.start, this.end, this.chunks, this.first, middle),
+						new FormatTask(this.rows, this.start, this.end, this.chunks, middle, this.last));
+			}
+		}
+	}
+
+	/**
+	 * Number of chunks per thread that are formatted before they are written, when
+	 * writing a {@link List}
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Number of rows that are formatted together by one worker
+	 */
+	static final int ROWS_PER_CHUNK = 256;
+
+	/**
+	 * Format the rows into one encoded block.
+	 *
+	 * @param formatter the formatter to use, must not be shared with other threads
+	 * @param rows      the initiators of the rows
+	 * @param from      index of the first row to format
+	 * @param to        index after the last row to format
+	 * @param hashing   whether the rows are hashed for deduplication
+	 * @return the chunk containing all rows up to the first one that failed
+	 */
+	static Chunk format(RowPlan.Formatter formatter, List<? extends StudyOrAssayTableObject> rows, int from,
+			int to, boolean hashing) {
+		StringBuilder sb = new StringBuilder();
+		RowHash hash = hashing ? new RowHash() : null;
+		long[] hashes = hashing ? new long[2 * (to - from)] : null;
+		int[] ends = hashing ? new int[to - from] : null;
+		RuntimeException failure = null;
+		int formatted = 0;
+		for (int i = from; i < to; i++) {
+			int rowStart = sb.length();
+			try {
+				formatter.format(rows.get(i), sb);
+			} catch (RuntimeException e) {
+				// Drop what was formatted of the broken row, writeLine would not have written
+				// any of it either
+				sb.setLength(rowStart);
+				failure = e;
+				break;
+			}
+			sb.append(Symbol.ENTER.toString());
+			if (hashing) {
+				// The hash counts the encoded bytes, so it also tells where the row ends
+				hash.reset();
+				hash.update(sb, rowStart, sb.length());
+				long[] h = hash.finish();
+				hashes[2 * formatted] = h[0];
+				hashes[2 * formatted + 1] = h[1];
+				ends[formatted] = (int) ((formatted == 0 ? 0 : ends[formatted - 1]) + hash.length());
+			}
+			formatted++;
+		}
+		return new Chunk(sb.toString().getBytes(Props.DEFAULT_CHARSET), formatted, hashes, ends, failure);
+	}
+
+	private static Chunk waitFor(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for rows to be formatted");
+		} catch (ExecutionException e) {
+			// Rows that cannot be formatted are reported through the chunk, so this is
+			// an Error or something equally unexpected
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * The workers formatting the rows of iterators, null until they are needed
+	 */
+	private ExecutorService executor = null;
+
+	/**
+	 * Skips rows that were already written, null to write all rows
+	 */
+	private final DuplicateRowFilter filter;
+
+	private final ThreadLocal<RowPlan.Formatter> formatters;
+
+	/**
+	 * The workers formatting the rows of lists, null until they are needed
+	 */
+	private ForkJoinPool pool = null;
+
+	private final int threads;
+
+	/**
+	 * @param plan    the compiled headers of the file
+	 * @param threads the number of worker threads
+	 * @param filter  the filter of the output, null to write all rows. Rows are
+	 *                hashed by the workers, the writing thread only looks up the
+	 *                hashes.
+	 */
+	RowPipeline(RowPlan plan, int threads, DuplicateRowFilter filter) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed for formatting");
+		this.formatters = ThreadLocal.withInitial(plan::newFormatter);
+		this.threads = threads;
+		this.filter = filter;
+	}
+
+	/**
+	 * Stop the worker threads and wait until they are finished. Chunks that are
+	 * still being formatted are dropped.
+	 */
+	void close() {
+		if (this.executor != null)
+			this.executor.shutdownNow();
+		if (this.pool != null)
+			this.pool.shutdownNow();
+		try {
+			if (this.executor != null)
+				this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			if (this.pool != null)
+				this.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Format and write all rows of the list. The list is formatted in windows of
+	 * {@link #CHUNKS_PER_THREAD} chunks per thread: every window is split into
+	 * chunks on a {@link ForkJoinPool}, then the encoded chunks are written in
+	 * order and the next window is started. So only one window of formatted rows
+	 * is held in memory, and nothing after a broken row is formatted beyond the
+	 * window it is in.
+	 *
+	 * @param initiators the first objects of the rows
+	 * @param output     the output to write to
+	 * @return the number of rows written
+	 * @throws IOException if writing fails
+	 */
+	long write(List<? extends StudyOrAssayTableObject> initiators, TableOutput output) throws IOException {
+		// Chunks access the rows by index
+		List<? extends StudyOrAssayTableObject> rows = initiators instanceof RandomAccess ? initiators
+				: new ArrayList<StudyOrAssayTableObject>(initiators);
+		int window = ROWS_PER_CHUNK * CHUNKS_PER_THREAD * this.threads;
+		if (this.pool == null)
+			this.pool = new ForkJoinPool(this.threads);
+		long written = 0;
+		for (int start = 0; start < rows.size(); start += window) {
+			int end = Math.min(start + window, rows.size());
+			Chunk[] chunks = new Chunk[(end - start + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK];
+			this.pool.invoke(new FormatTask(rows, start, end, chunks, 0, chunks.length));
+			for (Chunk chunk : chunks)
+				written += chunk.writeTo(output, this.filter);
+		}
+		return written;
+	}
+
+	/**
+	 * Format and write all remaining rows of the iterator.
+	 *
+	 * @param initiators the first objects of the rows
+	 * @param output     the output to write to
+	 * @return the number of rows written
+	 * @throws IOException if writing fails or the thread was interrupted
+	 */
+	long write(Iterator<? extends StudyOrAssayTableObject> initiators, TableOutput output) throws IOException {
+		if (this.executor == null) {
+			ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+			this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+				Thread thread = defaultFactory.newThread(runnable);
+				thread.setName("isa4j-" + thread.getName());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		boolean hashing = this.filter != null;
+		long written = 0;
+		try {
+			while (initiators.hasNext()) {
+				List<StudyOrAssayTableObject> rows = new ArrayList<StudyOrAssayTableObject>(ROWS_PER_CHUNK);
+				while (rows.size() < ROWS_PER_CHUNK && initiators.hasNext())
+					rows.add(initiators.next());
+				pending.add(this.executor.submit(() -> format(this.formatters.get(), rows, 0, rows.size(), hashing)));
+				if (pending.size() >= 2 * this.threads)
+					written += waitFor(pending.poll()).writeTo(output, this.filter);
+			}
+			while (!pending.isEmpty())
+				written += waitFor(pending.poll()).writeTo(output, this.filter);
+		} finally {
+			// Chunks that won't be written because an earlier one failed
+			for (Future<Chunk> future : pending)
+				future.cancel(true);
+		}
+		return written;
+	}
+
+}
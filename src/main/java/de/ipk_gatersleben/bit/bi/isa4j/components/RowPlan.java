@@ -0,0 +1,702 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Compiled, immutable form of the header groups of a {@link WideTableFile}.
+ * The plan is built once from the headers captured by
+ * {@link WideTableFile#writeHeadersFromExample(StudyOrAssayTableObject)} and
+ * knows for every header group the position and expected width of each field,
+ * so that rows can be formatted by walking the plan instead of building a
+ * field map for every object in every row.
+ *
+ * The plan itself holds no per-row state. Rows are formatted by a
+ * {@link Formatter}, which owns the reusable scratch buffers and must only be
+ * used by one thread. What the plan does collect are the shapes of the objects
+ * that were already validated against each header group: a shape is a 64 bit
+ * fingerprint of the type of an object, the headers of its fields and the
+ * number of values in each field (which reflects whether units, Term Source
+ * REFs and Term Accession Numbers are present). Objects whose shape is known
+ * to fit the header group are written without any checks, all other objects
+ * are validated once and their shape is remembered. The fingerprint only
+ * speeds up the lookup: the type, headers and widths are remembered as well
+ * and compared whenever a fingerprint matches, so a collision can't let an
+ * object through unchecked. The shapes are shared by all formatters of a plan.
+ */
+final class RowPlan {
+
+	/**
+	 * Formats rows according to a {@link RowPlan}. Objects push their fields into
+	 * the formatter, which first appends their values straight to the row and only
+	 * computes the shape of the object. If the shape is known to fit the header
+	 * group, the object is done. Otherwise the object is validated: its fields are
+	 * appended again, checking each header and width, as long as they arrive in
+	 * header order. Only if an object delivers its fields in a different order (or
+	 * twice) the fields are collected into one reusable slot per column first and
+	 * then appended in header order. Not thread-safe.
+	 */
+	final class Formatter implements RowSink {
+
+		/**
+		 * Cells of the annotations this formatter has seen, appended as a whole
+		 * whenever a field is appended as it comes
+		 */
+		private final AnnotationCellCache annotationCells = new AnnotationCellCache();
+
+		private final String[][] cells;
+
+		private int count;
+
+		private final int[][] counts;
+
+		private int current;
+
+		private boolean firstCell;
+
+		private Group group;
+
+		private int groupIndex;
+
+		private int groupStart;
+
+		private int next;
+
+		/**
+		 * The object of the current group
+		 */
+		private StudyOrAssayTableObject object;
+
+		private StringBuilder sb;
+
+		/**
+		 * The fingerprint of the shape of the current object, as far as its fields
+		 * were emitted
+		 */
+		private long shape;
+
+		/**
+		 * Number of values of every field of the current object, see
+		 * {@link #shapeKeys}
+		 */
+		private int[] shapeCounts = new int[16];
+
+		/**
+		 * The fields of the current object, as far as they were emitted: the type of
+		 * the object first, for the values before any field, then the key or the
+		 * attribute of every field
+		 */
+		private Object[] shapeKeys = new Object[16];
+
+		/**
+		 * The name that goes with the attribute of every field, see
+		 * {@link #shapeKeys}
+		 */
+		private String[] shapeNames = new String[16];
+
+		private int shapeSize;
+
+		private int state;
+
+		private final List<String> unknownFields = new ArrayList<String>();
+
+		private Formatter() {
+			this.cells = new String[groups.length][];
+			this.counts = new int[groups.length][];
+			for (int i = 0; i < groups.length; i++) {
+				this.cells[i] = new String[groups[i].width];
+				this.counts[i] = new int[groups[i].keys.length];
+			}
+		}
+
+		private void appendSlots(StudyOrAssayTableObject object) {
+			int[] counts = this.counts[this.groupIndex];
+			String[] cells = this.cells[this.groupIndex];
+			for (int i = 0; i < this.group.keys.length; i++) {
+				if (counts[i] < 0)
+					throw missingField(object, i);
+				if (counts[i] != this.group.widths[i])
+					throw widthMismatch(object, i, counts[i]);
+				if (i > 0)
+					this.sb.append(Symbol.TAB.toString());
+				int offset = this.group.offsets[i];
+				for (int j = 0; j < counts[i]; j++) {
+					if (j > 0)
+						this.sb.append(Symbol.TAB.toString());
+					this.sb.append(cells[offset + j]);
+				}
+			}
+			// Don't keep the values of this row reachable
+			Arrays.fill(cells, null);
+		}
+
+		/**
+		 * Add a value to the field that was started last. In slot mode, values beyond
+		 * the width of the header are only counted so that the mismatch can be
+		 * reported.
+		 */
+		public void cell(String value) {
+			if (this.state == TRUSTED) {
+				if (!this.firstCell)
+					this.sb.append(Symbol.TAB.toString());
+				this.sb.append(value);
+				this.firstCell = false;
+				this.count++;
+				return;
+			}
+			if (this.current < 0)
+				return;
+			if (this.state == DIRECT) {
+				if (!this.firstCell)
+					this.sb.append(Symbol.TAB.toString());
+				this.sb.append(value);
+				this.firstCell = false;
+				this.count++;
+			} else if (this.state == SLOTS) {
+				int[] counts = this.counts[this.groupIndex];
+				int count = counts[this.current];
+				if (count < this.group.widths[this.current])
+					this.cells[this.groupIndex][this.group.offsets[this.current] + count] = value;
+				counts[this.current] = count + 1;
+			}
+		}
+
+		/**
+		 * Adds the width of the field that was emitted last to the shape
+		 *
+		 * @return the fingerprint of the shape
+		 */
+		private long closeShapeField() {
+			if (this.count >= 0)
+				this.shape = hashShape(this.shape, this.count);
+			this.shapeCounts[this.shapeSize - 1] = this.count;
+			this.count = 0;
+			return this.shape;
+		}
+
+		/**
+		 * Closes the field that is currently written directly and checks its width
+		 */
+		private void closeDirectField() {
+			if (this.current >= 0 && this.count != this.group.widths[this.current])
+				throw widthMismatch(this.object, this.current, this.count);
+			this.current = -1;
+		}
+
+		/**
+		 * Describe the headers and widths of the group and of the fields the object
+		 * delivered, so that differences can be spotted at a glance
+		 */
+		private String describe(StudyOrAssayTableObject object) {
+			StringBuilder description = new StringBuilder("\n Header:");
+			for (int i = 0; i < this.group.keys.length; i++)
+				description.append(i == 0 ? " " : ", ").append(this.group.keys[i]).append(" (")
+						.append(this.group.widths[i]).append(")");
+			description.append("\n Object:");
+			class Fields implements RowSink {
+				private int count = -1;
+
+				public void cell(String value) {
+					this.count++;
+				}
+
+				private void close() {
+					if (this.count >= 0)
+						description.append(" (").append(this.count).append(")");
+				}
+
+				public void field(String key) {
+					this.close();
+					description.append(this.count < 0 ? " " : ", ").append(key);
+					this.count = 0;
+				}
+
+				public void field(StudyAssayAttribute attribute, String name) {
+					this.field(StringUtil.putNameInAttribute(attribute, String.valueOf(name)));
+				}
+			}
+			Fields fields = new Fields();
+			object.emitFields(fields);
+			fields.close();
+			return description.toString();
+		}
+
+		private void emitGroup(StudyOrAssayTableObject object) {
+			this.object = object;
+			this.groupStart = this.sb.length();
+
+			// Append everything as it comes and only look at the shape
+			this.state = TRUSTED;
+			this.firstCell = true;
+			this.count = -1;
+			this.shape = hashShape(SHAPE_SEED, System.identityHashCode(object.getClass()));
+			this.shapeSize = 0;
+			this.openShapeField(object.getClass(), null);
+			object.emitFields(this);
+			long shape = this.closeShapeField();
+			if (this.group.isTrusted(shape, this))
+				return;
+
+			this.sb.setLength(this.groupStart);
+			boolean known = this.group.isKnown(shape, this);
+			boolean trusted = this.validateGroup(object, !known);
+			if (!known)
+				this.group.remember(shape, trusted, this);
+		}
+
+		/**
+		 * Append the object with all checks.
+		 *
+		 * @param object the object of the current group
+		 * @param report whether fields without header are logged
+		 * @return true if the fields arrived in header order and all of them had a
+		 *         header, i.e. appending them as they come is correct
+		 */
+		private boolean validateGroup(StudyOrAssayTableObject object, boolean report) {
+			this.state = DIRECT;
+			this.firstCell = true;
+			this.current = -1;
+			this.next = 0;
+			this.unknownFields.clear();
+			object.emitFields(this);
+
+			boolean trusted = this.state == DIRECT;
+			if (this.state == DIRECT) {
+				this.closeDirectField();
+				// Fields arrived in order, so the first one that did not arrive is missing
+				if (this.next < this.group.keys.length)
+					throw missingField(object, this.next);
+			} else {
+				// Fields arrived out of order, throw away what was written directly and
+				// collect the fields into the slots instead
+				this.sb.setLength(this.groupStart);
+				this.unknownFields.clear();
+				Arrays.fill(this.counts[this.groupIndex], -1);
+				this.state = SLOTS;
+				this.current = -1;
+				this.next = 0;
+				object.emitFields(this);
+				this.appendSlots(object);
+			}
+
+			if (this.unknownFields.size() > 0) {
+				trusted = false;
+				if (report)
+					logger.warn(
+							"{}: There were fields for Object {} that had no corresponding header. They were ignored: {}",
+							owner, object, String.join(", ", this.unknownFields));
+				this.unknownFields.clear();
+			}
+			return trusted;
+		}
+
+		/**
+		 * Start a new field of the current object, values are then added with
+		 * {@link #cell(String)}.
+		 */
+		public void field(String key) {
+			if (this.state == TRUSTED) {
+				this.closeShapeField();
+				this.openShapeField(key, null);
+				this.shape = hashShape(this.shape, key, 0, key.length());
+			} else if (this.state == DIRECT) {
+				this.closeDirectField();
+				if (this.next < this.group.keys.length && this.group.keys[this.next].equals(key)) {
+					this.openDirectField();
+				} else if (this.group.positions.containsKey(key)) {
+					// Known field but not in header order
+					this.state = REDO;
+				} else {
+					this.unknownFields.add(key);
+				}
+			} else if (this.state == SLOTS) {
+				this.current = this.group.positionOf(key, this.next);
+				if (this.current < 0) {
+					this.unknownFields.add(key);
+					return;
+				}
+				// A field that is delivered twice overwrites the first one, like in a map
+				this.counts[this.groupIndex][this.current] = 0;
+				this.next = this.current + 1;
+			}
+		}
+
+		public void field(StudyAssayAttribute attribute, String name) {
+			if (this.state == TRUSTED) {
+				// Hash the key as if it was built, so that it does not matter which of the
+				// field methods an object uses
+				this.closeShapeField();
+				this.openShapeField(attribute, name);
+				String template = attribute.toString();
+				int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+				if (wildcard < 0) {
+					this.shape = hashShape(this.shape, template, 0, template.length());
+				} else if (name == null) {
+					// Can never be valid, make sure the shape is not trusted by accident
+					this.shape = hashShape(this.shape, -1);
+				} else {
+					this.shape = hashShape(this.shape, template, 0, wildcard);
+					this.shape = hashShape(this.shape, name, 0, name.length());
+					this.shape = hashShape(this.shape, template, wildcard + 1, template.length());
+				}
+				return;
+			}
+			// Compare with the expected header first, so that the key only needs to be
+			// built if the field is not where it is expected
+			if (this.state == DIRECT && name != null && this.next < this.group.keys.length
+					&& StringUtil.isNameInAttribute(this.group.keys[this.next], attribute, name)) {
+				this.closeDirectField();
+				this.openDirectField();
+			} else if (this.state != REDO) {
+				this.field(StringUtil.putNameInAttribute(attribute, name));
+			}
+		}
+
+		/**
+		 * @param shape a remembered shape
+		 * @return whether the current object has exactly that shape
+		 */
+		private boolean hasShape(Shape shape) {
+			if (shape.keys.length != this.shapeSize)
+				return false;
+			for (int i = 0; i < this.shapeSize; i++)
+				if (shape.counts[i] != this.shapeCounts[i] || !shape.keys[i].equals(this.shapeKeys[i])
+						|| !Objects.equals(shape.names[i], this.shapeNames[i]))
+					return false;
+			return true;
+		}
+
+		/**
+		 * Append the complete row starting with the given initiator to the
+		 * {@link StringBuilder}, without a line break.
+		 *
+		 * @param initiator first object of the row
+		 * @param sb        the builder to append to
+		 */
+		void format(StudyOrAssayTableObject initiator, StringBuilder sb) {
+			this.sb = sb;
+			StudyOrAssayTableObject currentObject = initiator;
+			// Loop through header groups and objects at the same time, each header group
+			// corresponds to one object (Sample, Process ...)
+			for (this.groupIndex = 0; this.groupIndex < groups.length; this.groupIndex++) {
+				// This happens if we have header groups left but no more currentObjects in the
+				// line
+				Objects.requireNonNull(currentObject,
+						"This line contains fewer objects (Sources, Samples, Processes...) than were defined in the header."
+								+ "\n Please make sure your line structure is uniform (e.g. Sample->Process->Material->Process->DataFile for ALL lines) and everything is linked with Processes correctly.");
+
+				this.group = groups[this.groupIndex];
+				this.emitGroup(currentObject);
+
+				currentObject = currentObject.getNextStudyOrAssayTableObject();
+				if (currentObject != null)
+					sb.append(Symbol.TAB.toString());
+			}
+			this.sb = null;
+			this.object = null;
+		}
+
+		private NullPointerException missingField(StudyOrAssayTableObject object, int position) {
+			return new NullPointerException("Object " + object + " has no field for header "
+					+ this.group.keys[position] + this.describe(object));
+		}
+
+		/**
+		 * Append the cells of an annotation from the cache if the field is appended
+		 * as it comes, otherwise add them one by one.
+		 */
+		public void ontologyAnnotation(OntologyAnnotation ontologyAnnotation) {
+			if (this.state == TRUSTED || (this.state == DIRECT && this.current >= 0)) {
+				AnnotationCellCache.Cells cells = this.annotationCells.get(ontologyAnnotation);
+				if (!this.firstCell)
+					this.sb.append(Symbol.TAB.toString());
+				this.sb.append(cells.text);
+				this.firstCell = false;
+				this.count += cells.count;
+			} else {
+				RowSink.super.ontologyAnnotation(ontologyAnnotation);
+			}
+		}
+
+		private void openDirectField() {
+			this.current = this.next;
+			this.next++;
+			this.count = 0;
+		}
+
+		/**
+		 * Adds a field to the shape of the current object
+		 *
+		 * @param key  the key or the attribute of the field
+		 * @param name the name that goes with the attribute
+		 */
+		private void openShapeField(Object key, String name) {
+			if (this.shapeSize == this.shapeKeys.length) {
+				this.shapeCounts = Arrays.copyOf(this.shapeCounts, this.shapeSize << 1);
+				this.shapeKeys = Arrays.copyOf(this.shapeKeys, this.shapeSize << 1);
+				this.shapeNames = Arrays.copyOf(this.shapeNames, this.shapeSize << 1);
+			}
+			this.shapeKeys[this.shapeSize] = key;
+			this.shapeNames[this.shapeSize++] = name;
+		}
+
+		private IllegalStateException widthMismatch(StudyOrAssayTableObject object, int position, int count) {
+			return new IllegalStateException("Object has "
+					+ (this.group.widths[position] > count ? "fewer" : "more")
+					+ "columns than header for " + this.group.keys[position]
+					+ "\n Please make sure that every object contains the same information as the first line (or the examplary objects that were manually passed to writeHeadersFromExample)."
+					+ "This error mostly occurs when only some objects of the same column (e.g. a specific Process ParameterValue) have Term Source Refs and Term Accession numbers."
+					+ this.describe(object));
+		}
+	}
+
+	/**
+	 * One header group, i.e. the columns belonging to one object (Source,
+	 * Process, Sample ...) of a row.
+	 */
+	private static final class Group {
+
+		private static boolean contains(Shape[] shapes, long fingerprint, Formatter formatter) {
+			for (Shape known : shapes)
+				if (known.fingerprint == fingerprint && formatter.hasShape(known))
+					return true;
+			return false;
+		}
+
+		private final String[] keys;
+
+		/**
+		 * Shapes that were validated, but can't be appended as they come because the
+		 * fields are not in header order or some of them have no header
+		 */
+		private volatile Shape[] knownShapes = new Shape[0];
+
+		private final int[] offsets;
+
+		private final Map<String, Integer> positions;
+
+		/**
+		 * Shapes that were validated and can be appended as they come
+		 */
+		private volatile Shape[] trustedShapes = new Shape[0];
+
+		private final int width;
+
+		private final int[] widths;
+
+		private Group(LinkedHashMap<String, String[]> headerGroup) {
+			int size = headerGroup.size();
+			this.keys = new String[size];
+			this.widths = new int[size];
+			this.offsets = new int[size];
+			this.positions = new HashMap<String, Integer>(size * 2);
+			int i = 0;
+			int offset = 0;
+			for (Map.Entry<String, String[]> entry : headerGroup.entrySet()) {
+				this.keys[i] = entry.getKey();
+				this.widths[i] = entry.getValue().length;
+				this.offsets[i] = offset;
+				this.positions.put(entry.getKey(), i);
+				offset += this.widths[i];
+				i++;
+			}
+			this.width = offset;
+		}
+
+		private boolean isKnown(long fingerprint, Formatter formatter) {
+			return contains(this.knownShapes, fingerprint, formatter);
+		}
+
+		private boolean isTrusted(long fingerprint, Formatter formatter) {
+			return contains(this.trustedShapes, fingerprint, formatter);
+		}
+
+		/**
+		 * Find the position of a field in this group. Objects usually deliver their
+		 * fields in header order, so the expected position is checked before looking
+		 * the key up.
+		 *
+		 * @param key      the header key of the field
+		 * @param expected the position the field has if it arrived in order
+		 * @return the position of the field or -1 if there is no such header
+		 */
+		private int positionOf(String key, int expected) {
+			if (expected < this.keys.length && this.keys[expected].equals(key))
+				return expected;
+			Integer position = this.positions.get(key);
+			return position == null ? -1 : position;
+		}
+
+		/**
+		 * Remember the validated shape of the current object of a formatter. Only
+		 * {@link #MAX_SHAPES} shapes of each kind are kept, objects of any other
+		 * shape are simply validated every time.
+		 *
+		 * @param fingerprint the fingerprint of the shape
+		 * @param trusted     whether objects of this shape can be appended as they
+		 *                    come
+		 * @param formatter   the formatter
+		 */
+		private synchronized void remember(long fingerprint, boolean trusted, Formatter formatter) {
+			Shape[] shapes = trusted ? this.trustedShapes : this.knownShapes;
+			if (shapes.length >= MAX_SHAPES || contains(shapes, fingerprint, formatter))
+				return;
+			shapes = Arrays.copyOf(shapes, shapes.length + 1);
+			shapes[shapes.length - 1] = new Shape(fingerprint, formatter);
+			if (trusted)
+				this.trustedShapes = shapes;
+			else
+				this.knownShapes = shapes;
+		}
+	}
+
+	/**
+	 * The exact shape of an object that was validated: its type, the key or the
+	 * attribute and name of every field and the number of values of every field
+	 */
+	private static final class Shape {
+
+		private final int[] counts;
+
+		private final long fingerprint;
+
+		private final Object[] keys;
+
+		private final String[] names;
+
+		private Shape(long fingerprint, Formatter formatter) {
+			this.fingerprint = fingerprint;
+			this.counts = Arrays.copyOf(formatter.shapeCounts, formatter.shapeSize);
+			this.keys = Arrays.copyOf(formatter.shapeKeys, formatter.shapeSize);
+			this.names = Arrays.copyOf(formatter.shapeNames, formatter.shapeSize);
+		}
+	}
+
+	/**
+	 * Fields are appended to the row as they arrive
+	 */
+	private static final int DIRECT = 0;
+
+	private static final Logger logger = LoggerFactory.getLogger(RowPlan.class);
+
+	/**
+	 * Maximum number of trusted and of known shapes per header group
+	 */
+	private static final int MAX_SHAPES = 64;
+
+	/**
+	 * Fields arrived out of order, ignore the rest of the object and format it
+	 * again in slot mode
+	 */
+	private static final int REDO = 2;
+
+	private static final long SHAPE_SEED = 0xcbf29ce484222325L;
+
+	/**
+	 * Fields are collected into the slots and appended in header order
+	 */
+	private static final int SLOTS = 1;
+
+	/**
+	 * Fields are appended to the row as they arrive without any checks, only the
+	 * shape of the object is computed
+	 */
+	private static final int TRUSTED = 3;
+
+	/**
+	 * Add a number to a shape
+	 */
+	private static long hashShape(long shape, long value) {
+		shape = (shape ^ value) * 0x100000001b3L;
+		return shape ^ (shape >>> 29);
+	}
+
+	/**
+	 * Add the characters of a String to a shape (FNV-1a)
+	 */
+	private static long hashShape(long shape, String value, int from, int to) {
+		for (int i = from; i < to; i++)
+			shape = (shape ^ value.charAt(i)) * 0x100000001b3L;
+		return shape;
+	}
+
+	private final Group[] groups;
+
+	/**
+	 * The file this plan belongs to, only used for log messages
+	 */
+	private final Object owner;
+
+	/**
+	 * Compile the header groups of a file.
+	 *
+	 * @param owner   the file the plan belongs to
+	 * @param headers the header groups, one for each object in a row
+	 */
+	RowPlan(Object owner, List<LinkedHashMap<String, String[]>> headers) {
+		this.owner = owner;
+		this.groups = new Group[headers.size()];
+		for (int i = 0; i < this.groups.length; i++)
+			this.groups[i] = new Group(headers.get(i));
+	}
+
+	/**
+	 * Find a cell in the row. Cells are counted over all header groups, i.e. the
+	 * index is the number of TABs in front of the cell in a formatted row.
+	 *
+	 * @param groupIndex the header group, i.e. the position of the object in the
+	 *                   row
+	 * @param key        the header of the field
+	 * @param cell       the cell within the field, 0 for the value
+	 * @return the index of the cell or -1 if there is no such cell
+	 */
+	int cellIndex(int groupIndex, String key, int cell) {
+		if (groupIndex < 0 || groupIndex >= this.groups.length)
+			return -1;
+		Group group = this.groups[groupIndex];
+		int position = group.positionOf(key, 0);
+		if (position < 0 || cell < 0 || cell >= group.widths[position])
+			return -1;
+		int index = group.offsets[position] + cell;
+		for (int i = 0; i < groupIndex; i++)
+			index += this.groups[i].width;
+		return index;
+	}
+
+	/**
+	 * @return a new {@link Formatter} for this plan, to be used by a single thread
+	 */
+	Formatter newFormatter() {
+		return new Formatter();
+	}
+
+	/**
+	 * @return the number of cells of a row
+	 */
+	int width() {
+		int width = 0;
+		for (Group group : this.groups)
+			width += group.width;
+		return width;
+	}
+
+}
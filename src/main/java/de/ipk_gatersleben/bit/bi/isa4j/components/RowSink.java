@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+
+/**
+ * Receives the fields of a {@link StudyOrAssayTableObject} one after another,
+ * in the same order as the headers of the object. Every field is started with
+ * one of the field methods and followed by its values, e.g. for a
+ * Characteristic with an ontology term:
+ *
+ * sink.field(StudyAssayAttribute.CHARACTERISTICS, "Organism");
+ * sink.cell("Arabidopsis thaliana");
+ * sink.cell("NCBITaxon");
+ * sink.cell("http://purl.obolibrary.org/obo/NCBITaxon_3702");
+ *
+ * This way objects can push their values directly into an output buffer
+ * without building intermediate maps, lists or arrays.
+ */
+interface RowSink {
+
+	/**
+	 * Add a value to the field that was started last.
+	 *
+	 * @param value the value of the next column (may be null)
+	 */
+	void cell(String value);
+
+	/**
+	 * Start a field whose header is fixed, e.g. "Source Name" or the type of a
+	 * {@link DataFile}.
+	 *
+	 * @param key the header key of the field
+	 */
+	void field(String key);
+
+	/**
+	 * Start a field whose header is built from an attribute and a name, e.g.
+	 * "Characteristics[Organism]". Sinks that only need to compare the header can
+	 * do so without building the key.
+	 *
+	 * @param attribute the attribute containing the wildcard
+	 * @param name      the name to put in the attribute
+	 */
+	void field(StudyAssayAttribute attribute, String name);
+
+	/**
+	 * Add the term of an {@link OntologyAnnotation} followed by its Term Source
+	 * REF and Term Accession Number, if they are present, to the field that was
+	 * started last. Sinks that see the same annotations again and again can
+	 * override this to reuse the cells they built before.
+	 *
+	 * @param ontologyAnnotation the annotation
+	 */
+	default void ontologyAnnotation(OntologyAnnotation ontologyAnnotation) {
+		this.cell(ontologyAnnotation.getTerm());
+		if (ontologyAnnotation.getSourceREF() != null)
+			this.cell(ontologyAnnotation.getSourceREF().getName());
+		if (ontologyAnnotation.getTermAccession() != null)
+			this.cell(ontologyAnnotation.getTermAccession());
+	}
+
+}
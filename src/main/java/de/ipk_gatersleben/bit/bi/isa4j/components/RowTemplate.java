@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * A line of a {@link Study} or {@link Assay} file that is rendered once from
+ * an example and then written again and again with only a few cells changed.
+ * In most files nearly all cells are the same in every line (shared
+ * Characteristics, ParameterValues, FactorValues ...) and only names, file
+ * paths and a few values differ. For those cells, slots are declared; all other
+ * cells are encoded once and then only copied when a line is written:
+ *
+ * <pre>
+ * RowTemplate template = study.createRowTemplate(exampleSource);
+ * RowTemplate.Slot sourceName = template.slot(exampleSource, "Source Name");
+ * RowTemplate.Slot sampleName = template.slot(exampleSample, "Sample Name");
+ * for (...) {
+ * 	template.set(sourceName, "Plant_" + i);
+ * 	template.set(sampleName, "1135FA-" + i);
+ * 	study.writeLine(template);
+ * }
+ * </pre>
+ *
+ * The example is only read when the template is created and when slots are
+ * declared, so changing it afterwards has no effect on the template. A template
+ * belongs to the file it was created for and can only be used as long as the
+ * headers of that file stay the same. Not thread-safe.
+ */
+public final class RowTemplate {
+
+	/**
+	 * A cell of the template whose value is set for every line
+	 */
+	public static final class Slot {
+
+		private final int cell;
+
+		private final RowTemplate template;
+
+		private Slot(RowTemplate template, int cell) {
+			this.template = template;
+			this.cell = cell;
+		}
+	}
+
+	/**
+	 * The cells of the example, in the order they are written
+	 */
+	private final String[] cells;
+
+	private final List<StudyOrAssayTableObject> example = new ArrayList<StudyOrAssayTableObject>();
+
+	private final WideTableFile file;
+
+	private final RowPlan plan;
+
+	/**
+	 * Encoded constant parts of the line: the part before the first slot, between
+	 * every two slots and after the last slot (including the line break). Rendered
+	 * on demand, null while slots are being declared.
+	 */
+	private byte[][] segments = null;
+
+	private final List<Slot> slots = new ArrayList<Slot>();
+
+	/**
+	 * Whatever follows the last cell of the line
+	 */
+	private final String suffix;
+
+	/**
+	 * The current values of the slots, in the order of the cells
+	 */
+	private String[] values = new String[0];
+
+	/**
+	 * Use {@link WideTableFile#createRowTemplate(StudyOrAssayTableObject)}
+	 */
+	RowTemplate(WideTableFile file, StudyOrAssayTableObject initiator) {
+		this.file = file;
+		this.plan = Objects.requireNonNull(file.getRowPlan(), "No headers were written for " + file);
+		for (StudyOrAssayTableObject object = initiator; object != null; object = object
+				.getNextStudyOrAssayTableObject())
+			this.example.add(object);
+
+		StringBuilder sb = new StringBuilder();
+		this.plan.newFormatter().format(initiator, sb);
+		String row = sb.toString();
+		this.cells = new String[this.plan.width()];
+		int start = 0;
+		int end = 0;
+		for (int i = 0; i < this.cells.length; i++) {
+			end = row.indexOf(Symbol.TAB.toString(), start);
+			if (end < 0)
+				end = row.length();
+			this.cells[i] = row.substring(start, end);
+			start = end + 1;
+		}
+		// A TAB follows the last cell if the line has more objects than header groups
+		this.suffix = row.substring(end);
+		if (!this.suffix.isEmpty() && !this.suffix.equals(Symbol.TAB.toString()))
+			throw new IllegalArgumentException("The values of the example line must not contain TABs");
+	}
+
+	/**
+	 * @return the file this template belongs to
+	 */
+	WideTableFile getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return the plan the template was rendered for
+	 */
+	RowPlan getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Feed the line with the current values of the slots to a hash, as
+	 * {@link #writeTo(TableOutput)} would write it
+	 *
+	 * @param hash the hash
+	 */
+	void hashTo(RowHash hash) {
+		if (this.segments == null)
+			this.render();
+		for (int i = 0; i < this.values.length; i++) {
+			hash.update(this.segments[i], 0, this.segments[i].length);
+			hash.update(this.values[i], 0, this.values[i].length());
+		}
+		byte[] last = this.segments[this.values.length];
+		hash.update(last, 0, last.length);
+	}
+
+	/**
+	 * Encode the constant parts between the slots
+	 */
+	private void render() {
+		this.segments = new byte[this.slots.size() + 1][];
+		StringBuilder segment = new StringBuilder();
+		int slot = 0;
+		for (int i = 0; i < this.cells.length; i++) {
+			if (i > 0)
+				segment.append(Symbol.TAB.toString());
+			if (slot < this.slots.size() && this.slots.get(slot).cell == i) {
+				this.segments[slot++] = segment.toString().getBytes(Props.DEFAULT_CHARSET);
+				segment.setLength(0);
+			} else {
+				segment.append(this.cells[i]);
+			}
+		}
+		segment.append(this.suffix).append(Symbol.ENTER.toString());
+		this.segments[slot] = segment.toString().getBytes(Props.DEFAULT_CHARSET);
+	}
+
+	/**
+	 * Set the value of a slot for the next lines. Like all values that end up in
+	 * the file, it is sanitized.
+	 *
+	 * @param slot  the slot
+	 * @param value the value
+	 */
+	public void set(Slot slot, String value) {
+		if (slot.template != this)
+			throw new IllegalArgumentException("The slot belongs to another template");
+		this.values[this.slots.indexOf(slot)] = StringUtil.sanitize(value);
+	}
+
+	/**
+	 * Declare the value of a field of the example as varying, see
+	 * {@link #slot(StudyOrAssayTableObject, String, int)}.
+	 *
+	 * @param object an object of the example line
+	 * @param header the header of the field, e.g. "Source Name" or
+	 *               "Characteristics[Organism]"
+	 * @return the slot
+	 */
+	public Slot slot(StudyOrAssayTableObject object, String header) {
+		return this.slot(object, header, 0);
+	}
+
+	/**
+	 * Declare a cell of the example as varying. Until it is set, the slot has the
+	 * value of the example. Declaring the same cell twice returns the same slot.
+	 *
+	 * @param object an object of the example line
+	 * @param header the header of the field, e.g. "Parameter Value[Volume]"
+	 * @param cell   the cell of the field: 0 for the value, 1 and following for
+	 *               the Term Source REF, Term Accession Number or Unit columns
+	 *               that follow it
+	 * @return the slot
+	 */
+	public Slot slot(StudyOrAssayTableObject object, String header, int cell) {
+		int groupIndex = -1;
+		for (int i = 0; i < this.example.size(); i++)
+			if (this.example.get(i) == object)
+				groupIndex = i;
+		if (groupIndex < 0)
+			throw new IllegalArgumentException(object + " is not part of the example line");
+		int index = this.plan.cellIndex(groupIndex, header, cell);
+		if (index < 0)
+			throw new IllegalArgumentException(object + " has no cell " + cell + " for header " + header);
+
+		int position = 0;
+		while (position < this.slots.size() && this.slots.get(position).cell < index)
+			position++;
+		if (position < this.slots.size() && this.slots.get(position).cell == index)
+			return this.slots.get(position);
+
+		Slot slot = new Slot(this, index);
+		this.slots.add(position, slot);
+		String[] values = new String[this.slots.size()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = this.cells[this.slots.get(i).cell];
+		for (int i = 0, old = 0; i < values.length; i++)
+			if (i != position)
+				values[i] = this.values[old++];
+		this.values = values;
+		this.segments = null;
+		return slot;
+	}
+
+	/**
+	 * Write the line with the current values of the slots
+	 *
+	 * @param output the output to write to
+	 * @throws IOException if writing fails
+	 */
+	void writeTo(TableOutput output) throws IOException {
+		if (this.segments == null)
+			this.render();
+		for (int i = 0; i < this.values.length; i++) {
+			output.write(this.segments[i], 0, this.segments[i].length);
+			output.write(this.values[i]);
+		}
+		byte[] last = this.segments[this.values.length];
+		output.write(last, 0, last.length);
+	}
+
+}
@@ -8,10 +8,8 @@
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
@@ -40,6 +38,14 @@ public class Sample extends Source implements Commentable {
 	public CommentCollection comments() {
 		return this.comments;
 	}
+	
+	void emitFields(RowSink sink) {
+		sink.field(StudyAssayAttribute.SAMPLE_NAME.toString());
+		sink.cell(this.getName());
+		this.emitFieldsForCharacteristics(sink);
+		this.emitFieldsForComments(this.comments, sink);
+		this.emitFieldsForValues(StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName(), sink);
+	}
 
 	/**
 	 * @return the factorValues
@@ -48,17 +54,6 @@ public class Sample extends Source implements Commentable {
 		return factorValues;
 	}
 	
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(StudyAssayAttribute.SAMPLE_NAME.toString(), new String[]{this.getName()});
-		fields.putAll(this.getFieldsForCharacteristics());
-		fields.putAll(this.getFieldsForComments(this.comments));
-		fields.putAll(this.getFieldsForValues(StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName()));
-
-		return fields;
-	}
-	
 	LinkedHashMap<String, String[]> getHeaders() {
 		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
 		
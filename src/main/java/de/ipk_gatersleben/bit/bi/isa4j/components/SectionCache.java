@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * The encoded lines of a section of an {@link Investigation} file, together
+ * with the state of the objects they were rendered from. Every object shown in
+ * the section is recorded in a {@link Key} by its identity and the number of
+ * changes made by its setters and adders. As long as a section shows the same
+ * objects in the same order and none of them was changed, it is not rendered
+ * again and the cached bytes are written instead. Not thread-safe.
+ */
+final class SectionCache {
+
+	/**
+	 * The objects a section is rendered from, in the order they are shown, with
+	 * the number of changes made to each of them. Lists are recorded with their
+	 * size, so objects added to or removed from the lists returned by the getters
+	 * are noticed as well.
+	 */
+	static final class Key {
+
+		private int[] modifications = new int[16];
+
+		private Object[] objects = new Object[16];
+
+		private int size = 0;
+
+		/**
+		 * @param object        the object, can be null
+		 * @param modifications the number of changes made to the object
+		 * @return this key
+		 */
+		Key add(Object object, int modifications) {
+			if (this.size == this.objects.length) {
+				this.objects = Arrays.copyOf(this.objects, this.size << 1);
+				this.modifications = Arrays.copyOf(this.modifications, this.size << 1);
+			}
+			this.objects[this.size] = object;
+			this.modifications[this.size++] = modifications;
+			return this;
+		}
+
+		/**
+		 * Record an ontology annotation and its Term Source REF
+		 *
+		 * @param annotation the annotation, can be null
+		 * @return this key
+		 */
+		Key annotation(OntologyAnnotation annotation) {
+			if (annotation == null)
+				return this.add(null, 0).add(null, 0);
+			Ontology source = annotation.getSourceREF();
+			return this.add(annotation, annotation.getModifications()).add(source,
+					source == null ? 0 : source.getModifications());
+		}
+
+		Key assay(Assay assay) {
+			return this.add(assay, assay.getModifications()).annotation(assay.getMeasurementType())
+					.annotation(assay.getTechnologyType()).comments(assay);
+		}
+
+		/**
+		 * Record the comments of an object
+		 *
+		 * @param commentable the object
+		 * @return this key
+		 */
+		Key comments(Commentable commentable) {
+			return this.each(commentable.comments().getAll(),
+					(key, comment) -> key.add(comment, comment.getModifications()));
+		}
+
+		Key contact(Person person) {
+			return this.add(person, person.getModifications()).each(person.getRoles(), Key::annotation)
+					.comments(person);
+		}
+
+		/**
+		 * Record a list and its elements
+		 *
+		 * @param <T>     type of the elements
+		 * @param objects the list
+		 * @param add     records an element
+		 * @return this key
+		 */
+		<T> Key each(List<T> objects, BiConsumer<Key, T> add) {
+			this.add(objects, objects.size());
+			for (T object : objects)
+				add.accept(this, object);
+			return this;
+		}
+
+		Key factor(Factor factor) {
+			return this.add(factor, factor.getModifications()).annotation(factor.getType()).comments(factor);
+		}
+
+		Key investigation(Investigation investigation) {
+			return this.add(investigation, investigation.getModifications()).comments(investigation);
+		}
+
+		private boolean matches(Key other) {
+			if (this.size != other.size)
+				return false;
+			for (int i = 0; i < this.size; i++)
+				if (this.objects[i] != other.objects[i] || this.modifications[i] != other.modifications[i])
+					return false;
+			return true;
+		}
+
+		Key ontology(Ontology ontology) {
+			return this.add(ontology, ontology.getModifications());
+		}
+
+		Key protocol(Protocol protocol) {
+			return this.add(protocol, protocol.getModifications()).annotation(protocol.getType())
+					.each(protocol.getParameters(),
+							(key, parameter) -> key.add(parameter, parameter.getModifications())
+									.annotation(parameter.getName()))
+					.each(protocol.getComponents(),
+							(key, component) -> key.add(component, component.getModifications())
+									.annotation(component.getType()))
+					.comments(protocol);
+		}
+
+		Key publication(Publication publication) {
+			return this.add(publication, publication.getModifications()).annotation(publication.getStatus())
+					.comments(publication);
+		}
+
+		/**
+		 * Record a study with its comments and design descriptors
+		 *
+		 * @param study the study
+		 * @return this key
+		 */
+		Key study(Study study) {
+			return this.add(study, study.getModifications()).comments(study).each(study.getDesignDescriptors(),
+					(key, descriptor) -> key.annotation(descriptor).comments(descriptor));
+		}
+	}
+
+	/**
+	 * Size in bytes of the buffer a section is rendered into
+	 */
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	/**
+	 * Render lines into a buffer of their own
+	 *
+	 * @param section writes the lines
+	 * @return the encoded lines
+	 * @throws IOException if writing the lines fails
+	 */
+	static byte[] render(SectionWriter.Section section) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+		TableOutput output = new BufferedTableOutput(bytes, BUFFER_SIZE);
+		section.writeTo(new SectionWriter(output));
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	private byte[] bytes = null;
+
+	private Key key = null;
+
+	/**
+	 * Whether the last call of {@link #get(Supplier, SectionWriter.Section)}
+	 * rendered the section
+	 */
+	private boolean rendered = false;
+
+	/**
+	 * Get the encoded lines of the section, rendered again only if the objects it
+	 * shows changed since they were cached
+	 *
+	 * @param key     records the objects the section shows now
+	 * @param section writes the lines of the section
+	 * @return the encoded lines
+	 * @throws IOException if writing the lines fails
+	 */
+	byte[] get(Supplier<Key> key, SectionWriter.Section section) throws IOException {
+		if (this.key != null && this.key.matches(key.get())) {
+			this.rendered = false;
+			return this.bytes;
+		}
+		this.key = null;
+		this.bytes = render(section);
+		// Recorded after rendering, which sorts single-column comments in place
+		this.key = key.get();
+		this.rendered = true;
+		return this.bytes;
+	}
+
+	/**
+	 * @return whether the last call of {@link #get(Supplier, SectionWriter.Section)}
+	 *         rendered the section
+	 */
+	boolean wasRendered() {
+		return this.rendered;
+	}
+
+}
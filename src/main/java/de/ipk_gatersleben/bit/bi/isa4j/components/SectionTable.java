@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * The lines of a block of an {@link Investigation} file that has one column per
+ * object, like the contacts or the protocols of a study. The lines are defined
+ * once and the table is reused for every block of that kind. When a block is
+ * written, every line is streamed cell by cell straight from the objects, so
+ * the block is never held in memory as a whole. The accessor of a line is
+ * evaluated once per object, an ontology annotation or a list of values once
+ * per cell.<br>
+ * <br>
+ * A table is immutable once its lines are defined and can be used by several
+ * threads at the same time.
+ *
+ * @param <T> type of the objects, one per column
+ */
+final class SectionTable<T> {
+
+	private static final String SEMICOLON = Symbol.SEMICOLON.toString();
+
+	private static <V> String join(List<V> values, Function<V, String> value) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (V v : values) {
+			if (!first)
+				sb.append(SEMICOLON);
+			sb.append(value.apply(v));
+			first = false;
+		}
+		return sb.toString();
+	}
+
+	private static String lineName(Object lineName, InvestigationAttribute suffix) {
+		return lineName.toString() + Symbol.SPACE + suffix;
+	}
+
+	/**
+	 * Extract the cell of every line from an object, null for an empty cell
+	 */
+	private final List<Function<T, String>> cells = new ArrayList<Function<T, String>>();
+
+	private final List<String> lineNames = new ArrayList<String>();
+
+	/**
+	 * Add lines with the term, accession and source of a list of ontology
+	 * annotations per object, joined by semicolons, like the roles of contacts.
+	 * The list is retrieved once per cell.
+	 *
+	 * @param <V>        type of the values in the list
+	 * @param lineName   the name of the first line
+	 * @param values     extracts the list from an object
+	 * @param annotation extracts the annotation from a value, can return null
+	 * @return this table
+	 */
+	<V> SectionTable<T> joinedOntologyLines(Object lineName, Function<T, List<V>> values,
+			Function<V, OntologyAnnotation> annotation) {
+		this.joinedLine(lineName, values, v -> {
+			OntologyAnnotation a = annotation.apply(v);
+			return a == null ? Symbol.EMPTY.toString() : String.valueOf(a.getTerm());
+		});
+		this.joinedLine(lineName(lineName, InvestigationAttribute.TERM_ACCESSION_NUMBER), values, v -> {
+			OntologyAnnotation a = annotation.apply(v);
+			return a == null || a.getTermAccession() == null ? Symbol.EMPTY.toString() : a.getTermAccession();
+		});
+		return this.joinedLine(lineName(lineName, InvestigationAttribute.TERM_SOURCE_REF), values, v -> {
+			OntologyAnnotation a = annotation.apply(v);
+			return a == null || a.getSourceREF() == null ? Symbol.EMPTY.toString() : a.getSourceREF().getName();
+		});
+	}
+
+	/**
+	 * Add a line with a list of values per object, joined by semicolons
+	 *
+	 * @param <V>      type of the values in the list
+	 * @param lineName the name of the line
+	 * @param values   extracts the list from an object
+	 * @param value    extracts the content from a value
+	 * @return this table
+	 */
+	<V> SectionTable<T> joinedLine(Object lineName, Function<T, List<V>> values, Function<V, String> value) {
+		return this.line(lineName, object -> join(values.apply(object), v -> String.valueOf(value.apply(v))));
+	}
+
+	/**
+	 * Add a line with one value per object
+	 *
+	 * @param lineName the name of the line
+	 * @param value    extracts the content from an object, null for an empty
+	 *                 cell
+	 * @return this table
+	 */
+	SectionTable<T> line(Object lineName, Function<T, String> value) {
+		this.lineNames.add(lineName.toString());
+		this.cells.add(value);
+		return this;
+	}
+
+	/**
+	 * Add the lines with the term, accession and source of an ontology annotation
+	 * per object. The annotation is retrieved once per cell.
+	 *
+	 * @param lineName   the name of the first line
+	 * @param annotation extracts the annotation from an object, can return null
+	 * @return this table
+	 */
+	SectionTable<T> ontologyLines(Object lineName, Function<T, OntologyAnnotation> annotation) {
+		this.line(lineName, object -> {
+			OntologyAnnotation a = annotation.apply(object);
+			return a == null ? null : a.getTerm();
+		});
+		this.line(lineName(lineName, InvestigationAttribute.TERM_ACCESSION_NUMBER), object -> {
+			OntologyAnnotation a = annotation.apply(object);
+			return a == null ? null : a.getTermAccession();
+		});
+		return this.line(lineName(lineName, InvestigationAttribute.TERM_SOURCE_REF), object -> {
+			OntologyAnnotation a = annotation.apply(object);
+			return a == null || a.getSourceREF() == null ? null : a.getSourceREF().getName();
+		});
+	}
+
+	/**
+	 * Write all lines of the table for some objects
+	 *
+	 * @param writer  the writer of the lines
+	 * @param objects the objects, one per column
+	 * @throws IOException if writing fails
+	 */
+	void writeTo(SectionWriter writer, List<T> objects) throws IOException {
+		for (int line = 0; line < this.lineNames.size(); line++)
+			writer.line(this.lineNames.get(line), objects, this.cells.get(line));
+	}
+
+}
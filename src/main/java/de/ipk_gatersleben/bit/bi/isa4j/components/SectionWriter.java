@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Writes the lines of the sections of an {@link Investigation} file, cell by
+ * cell, to a sink. No line or section is built as a whole before it is
+ * written, so when the sink is a {@link TableOutput} the memory needed does
+ * not depend on the number of contacts, protocols, studies etc. The blocks with
+ * one column per object are written through a {@link SectionTable}. The
+ * methods correspond to the static format methods of {@link Investigation},
+ * which collect the same lines in a String.
+ */
+final class SectionWriter {
+
+	/**
+	 * The values of one comment type, in the order of the columns they belong
+	 * to. Only columns that have a value are stored.
+	 */
+	private static final class CommentLine {
+
+		private int[] columns = new int[4];
+
+		private int size = 0;
+
+		private String[] values = new String[4];
+
+		/**
+		 * Add a value, columns must be added in ascending order. Several values of
+		 * the same column are joined by semicolons.
+		 */
+		private void add(int column, String value) {
+			if (this.size > 0 && this.columns[this.size - 1] == column) {
+				this.values[this.size - 1] += SEMICOLON + value;
+				return;
+			}
+			if (this.size == this.columns.length) {
+				this.columns = Arrays.copyOf(this.columns, this.size << 1);
+				this.values = Arrays.copyOf(this.values, this.size << 1);
+			}
+			this.columns[this.size] = column;
+			this.values[this.size++] = value;
+		}
+	}
+
+	/**
+	 * Writes lines with a {@link SectionWriter}
+	 */
+	@FunctionalInterface
+	interface Section {
+
+		void writeTo(SectionWriter writer) throws IOException;
+	}
+
+	private static final String ENTER = Symbol.ENTER.toString();
+
+	private static final String SEMICOLON = Symbol.SEMICOLON.toString();
+
+	private static final String TAB = Symbol.TAB.toString();
+
+	/**
+	 * Collect the lines of a section in a String
+	 *
+	 * @param section the section
+	 * @return the lines
+	 */
+	static String format(Section section) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			section.writeTo(new SectionWriter(sb));
+		} catch (IOException e) {
+			// Appending to a StringBuilder doesn't fail
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The output the sink writes to, null if the lines are appended to something
+	 * else
+	 */
+	private final TableOutput output;
+
+	private final Appendable sink;
+
+	/**
+	 * @param sink where the lines are appended to
+	 */
+	SectionWriter(Appendable sink) {
+		this.output = null;
+		this.sink = sink;
+	}
+
+	/**
+	 * @param output where the lines are written to
+	 */
+	SectionWriter(TableOutput output) {
+		this.output = output;
+		this.sink = new Appendable() {
+			@Override
+			public Appendable append(char c) throws IOException {
+				output.write(String.valueOf(c));
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence csq) throws IOException {
+				output.write(csq);
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) throws IOException {
+				output.write(csq.subSequence(start, end));
+				return this;
+			}
+		};
+	}
+
+	/**
+	 * Write a simple single-column attribute line, see
+	 * {@link Investigation#formatSimpleAttribute(InvestigationAttribute, String)}
+	 *
+	 * @param lineName the attribute
+	 * @param value    the value, can be null
+	 * @throws IOException if writing fails
+	 */
+	void attribute(InvestigationAttribute lineName, String value) throws IOException {
+		this.sink.append(lineName.toString()).append(TAB);
+		if (value != null)
+			this.sink.append(value);
+		this.sink.append(ENTER);
+	}
+
+	/**
+	 * Write the comment lines of several commentables, one column per
+	 * commentable, see {@link Investigation#formatComments(List)}. Takes time
+	 * linear in the number of comments.
+	 *
+	 * @param <T>          type of commentable
+	 * @param commentables the commentables
+	 * @throws IOException if writing fails
+	 */
+	<T extends Commentable> void comments(List<T> commentables) throws IOException {
+		// One pass over all comments, the lines keep the order in which their types
+		// first appear
+		LinkedHashMap<String, CommentLine> lines = new LinkedHashMap<String, CommentLine>();
+		for (int i = 0; i < commentables.size(); i++)
+			for (Comment comment : commentables.get(i).comments().getAll())
+				lines.computeIfAbsent(comment.getName(), name -> new CommentLine()).add(i,
+						String.valueOf(comment.getValue()));
+
+		for (Map.Entry<String, CommentLine> entry : lines.entrySet()) {
+			this.sink.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, entry.getKey()));
+			CommentLine line = entry.getValue();
+			for (int i = 0, next = 0; i < commentables.size(); i++) {
+				this.sink.append(TAB);
+				if (next < line.size && line.columns[next] == i)
+					this.sink.append(line.values[next++]);
+			}
+			this.sink.append(ENTER);
+		}
+	}
+
+	/**
+	 * Write lines that were encoded before, e.g. a section from a
+	 * {@link SectionCache}. Only possible when writing to a {@link TableOutput}.
+	 *
+	 * @param bytes the encoded lines
+	 * @throws IOException if writing fails
+	 */
+	void encoded(byte[] bytes) throws IOException {
+		if (this.output == null)
+			throw new IllegalStateException("Encoded lines can only be written to a TableOutput");
+		this.output.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Write a line with one cell per object, see {@link SectionTable}
+	 *
+	 * @param <T>      type of the objects
+	 * @param lineName the name of the line
+	 * @param objects  the objects
+	 * @param cell     extracts the content from an object, null for an empty
+	 *                 cell
+	 * @throws IOException if writing fails
+	 */
+	<T> void line(Object lineName, List<T> objects, Function<T, String> cell) throws IOException {
+		this.sink.append(lineName.toString());
+		for (T object : objects) {
+			this.sink.append(TAB);
+			String value = cell.apply(object);
+			if (value != null)
+				this.sink.append(value);
+		}
+		this.sink.append(ENTER);
+	}
+
+	/**
+	 * Write the name of a section on a line of its own
+	 *
+	 * @param section the section, e.g. "STUDY CONTACTS"
+	 * @throws IOException if writing fails
+	 */
+	void section(InvestigationAttribute section) throws IOException {
+		this.sink.append(section.toString()).append(ENTER);
+	}
+
+	/**
+	 * Write comments with a single column, sorted by their name, see
+	 * {@link Investigation#formatSimpleComments(List)}
+	 *
+	 * @param comments the comments, sorted in place
+	 * @throws IOException if writing fails
+	 */
+	void simpleComments(List<Comment> comments) throws IOException {
+		Collections.sort(comments, (c1, c2) -> c1.getName().compareTo(c2.getName()));
+		for (Comment c : comments) {
+			this.sink.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, c.getName())).append(TAB);
+			this.sink.append(String.valueOf(c.getValue())).append(ENTER);
+		}
+	}
+
+}
@@ -0,0 +1,456 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Sorts the lines written to it by the value of one column before they reach
+ * another {@link TableOutput}. Everything written before
+ * {@link #sortBy(int)}, i.e. the header line, is passed through as it is.
+ * Later lines are collected in memory until a limit is reached, then sorted
+ * and spilled to a temporary file as a sorted run. When the output is closed
+ * or released, the runs and the lines still in memory are merged into the
+ * destination, so tables much larger than the heap can be sorted.<br>
+ * <br>
+ * Lines are compared by the UTF-8 bytes of the column, i.e. by the Unicode
+ * code points of the value. The sort is stable, lines with the same value
+ * keep the order they were written in.
+ */
+final class SortingTableOutput extends TableOutput {
+
+	/**
+	 * A line and where the value of the sort column is in it
+	 */
+	private static final class Line {
+
+		final byte[] bytes;
+
+		final int keyEnd;
+
+		final int keyStart;
+
+		/**
+		 * Number of the run the line comes from, lines of earlier runs were written
+		 * first
+		 */
+		final int run;
+
+		private Line(byte[] bytes, int column, int run) {
+			this.bytes = bytes;
+			this.run = run;
+			int end = bytes.length;
+			if (endsWithLineBreak(bytes))
+				end -= LINE_BREAK.length;
+			int start = 0;
+			for (int i = 0; i < column && start < end; start++)
+				if (bytes[start] == '\t')
+					i++;
+			int keyEnd = start;
+			while (keyEnd < end && bytes[keyEnd] != '\t')
+				keyEnd++;
+			this.keyStart = Math.min(start, end);
+			this.keyEnd = keyEnd;
+		}
+
+		/**
+		 * Compare by the value of the sort column and by run
+		 */
+		int compareTo(Line other) {
+			int result = Arrays.compareUnsigned(this.bytes, this.keyStart, this.keyEnd, other.bytes, other.keyStart,
+					other.keyEnd);
+			return result != 0 ? result : Integer.compare(this.run, other.run);
+		}
+	}
+
+	/**
+	 * Takes the merged lines
+	 */
+	@FunctionalInterface
+	private interface LineConsumer {
+
+		void accept(byte[] bytes) throws IOException;
+	}
+
+	/**
+	 * Reads the lines of a sorted run from its temporary file, block by block
+	 */
+	private final class RunReader {
+
+		private final byte[] block = new byte[RUN_BUFFER_SIZE];
+
+		private Line current;
+
+		private final InputStream is;
+
+		/**
+		 * Number of bytes read into the block
+		 */
+		private int limit = 0;
+
+		/**
+		 * The start of a line that continues beyond the block
+		 */
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		/**
+		 * Index of the next byte of the block
+		 */
+		private int position = 0;
+
+		private final int run;
+
+		private RunReader(Path file, int run) throws IOException {
+			this.is = Files.newInputStream(file);
+			this.run = run;
+		}
+
+		/**
+		 * Move on to the next line of the run
+		 *
+		 * @return false if the run has no more lines
+		 */
+		private boolean advance() throws IOException {
+			this.line.reset();
+			while (true) {
+				for (int i = this.position; i < this.limit; i++) {
+					if (this.block[i] == '\n') {
+						byte[] bytes;
+						if (this.line.size() == 0) {
+							bytes = Arrays.copyOfRange(this.block, this.position, i + 1);
+						} else {
+							this.line.write(this.block, this.position, i + 1 - this.position);
+							bytes = this.line.toByteArray();
+						}
+						this.position = i + 1;
+						this.current = new Line(bytes, column, this.run);
+						return true;
+					}
+				}
+				this.line.write(this.block, this.position, this.limit - this.position);
+				this.position = 0;
+				this.limit = Math.max(this.is.read(this.block), 0);
+				if (this.limit == 0) {
+					this.current = null;
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The encoded line break that ends every line
+	 */
+	private static final byte[] LINE_BREAK = Symbol.ENTER.toString().getBytes(Props.DEFAULT_CHARSET);
+
+	/**
+	 * Estimated memory in bytes used for every line held in memory, besides its
+	 * bytes
+	 */
+	private static final int LINE_OVERHEAD = 48;
+
+	/**
+	 * Number of runs that are merged at once. More runs are merged in several
+	 * passes, each of which merges groups of this many runs into one, so every
+	 * line is copied once per pass.
+	 */
+	static final int MERGE_WIDTH = 64;
+
+	/**
+	 * Size in bytes of the buffers for reading and writing runs
+	 */
+	private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+	private static boolean endsWithLineBreak(byte[] bytes) {
+		if (bytes.length < LINE_BREAK.length)
+			return false;
+		for (int i = 0; i < LINE_BREAK.length; i++)
+			if (bytes[bytes.length - LINE_BREAK.length + i] != LINE_BREAK[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Index of the column the lines are sorted by, -1 while lines are passed
+	 * through
+	 */
+	private int column = -1;
+
+	private final TableOutput destination;
+
+	/**
+	 * The lines of the current run
+	 */
+	private final List<Line> lines = new ArrayList<Line>();
+
+	private final long memoryLimit;
+
+	/**
+	 * Estimated memory in bytes used by the lines of the current run
+	 */
+	private long memoryUsed = 0;
+
+	/**
+	 * The temporary files of the sorted runs, in the order they were written
+	 */
+	private final List<Path> runs = new ArrayList<Path>();
+
+	/**
+	 * @param destination the output the sorted lines are written to
+	 * @param bufferSize  the size of the buffer in bytes
+	 * @param memoryLimit the memory in bytes used for lines before they are
+	 *                    spilled to a temporary file
+	 */
+	SortingTableOutput(TableOutput destination, int bufferSize, long memoryLimit) {
+		super(ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE)));
+		this.destination = destination;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Writes all lines sorted and closes the destination.
+	 */
+	@Override
+	void close() throws IOException {
+		try {
+			this.finish();
+		} catch (IOException | RuntimeException | Error e) {
+			try {
+				this.destination.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		this.destination.close();
+	}
+
+	/**
+	 * Delete the temporary files of all runs
+	 */
+	private void deleteRuns() throws IOException {
+		for (Path run : this.runs)
+			Files.deleteIfExists(run);
+		this.runs.clear();
+	}
+
+	/**
+	 * Collects the complete lines of the buffer, or passes the buffer through if
+	 * lines are not sorted yet
+	 */
+	@Override
+	void drain() throws IOException {
+		if (this.column < 0) {
+			this.passThrough();
+			return;
+		}
+		this.takeLines();
+		if (!this.buffer.hasRemaining()) {
+			// A line longer than the buffer
+			ByteBuffer larger = ByteBuffer.allocate(this.buffer.capacity() << 1);
+			this.buffer.flip();
+			larger.put(this.buffer);
+			this.buffer = larger;
+		}
+		if (this.memoryUsed > this.memoryLimit)
+			this.spill();
+	}
+
+	/**
+	 * Write the lines sorted to the destination and delete the temporary files
+	 */
+	private void finish() throws IOException {
+		if (this.column < 0) {
+			this.passThrough();
+			return;
+		}
+		try {
+			this.takeLines();
+			if (this.buffer.position() > 0) {
+				// The last line has no line break
+				byte[] bytes = Arrays.copyOf(this.buffer.array(), this.buffer.position());
+				this.lines.add(new Line(bytes, this.column, this.runs.size()));
+				this.buffer.clear();
+			}
+			this.lines.sort(Line::compareTo);
+			if (this.runs.isEmpty()) {
+				for (Line line : this.lines)
+					this.destination.write(line.bytes, 0, line.bytes.length);
+			} else {
+				// The lines in memory are the last run
+				while (this.runs.size() >= MERGE_WIDTH)
+					this.mergePass();
+				this.merge(this.runs, this.lines, bytes -> this.destination.write(bytes, 0, bytes.length));
+			}
+		} finally {
+			this.lines.clear();
+			this.memoryUsed = 0;
+			this.deleteRuns();
+		}
+	}
+
+	/**
+	 * Only flushes the destination, the lines are written when the output is
+	 * closed or released
+	 */
+	@Override
+	void flush() throws IOException {
+		if (this.column < 0)
+			this.passThrough();
+		this.destination.flush();
+	}
+
+	/**
+	 * Merge sorted runs and the sorted lines after them
+	 */
+	private void merge(List<Path> runs, List<Line> last, LineConsumer consumer) throws IOException {
+		List<RunReader> readers = new ArrayList<RunReader>();
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size() + 1,
+				(a, b) -> a.current.compareTo(b.current));
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				readers.add(reader);
+				if (reader.advance())
+					queue.add(reader);
+			}
+			int lastIndex = 0;
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.peek();
+				// The lines in memory were written after all runs, so they come last among
+				// equal values
+				if (lastIndex < last.size()
+						&& Arrays.compareUnsigned(last.get(lastIndex).bytes, last.get(lastIndex).keyStart,
+								last.get(lastIndex).keyEnd, reader.current.bytes, reader.current.keyStart,
+								reader.current.keyEnd) < 0) {
+					consumer.accept(last.get(lastIndex++).bytes);
+					continue;
+				}
+				queue.poll();
+				consumer.accept(reader.current.bytes);
+				if (reader.advance())
+					queue.add(reader);
+			}
+			while (lastIndex < last.size())
+				consumer.accept(last.get(lastIndex++).bytes);
+		} finally {
+			for (RunReader reader : readers)
+				reader.is.close();
+		}
+	}
+
+	/**
+	 * Merge the runs in consecutive groups of {@link #MERGE_WIDTH}, so that the
+	 * merged runs keep the order of the lines with equal values
+	 */
+	private void mergePass() throws IOException {
+		List<Path> pass = new ArrayList<Path>(this.runs);
+		this.runs.clear();
+		int start = 0;
+		try {
+			for (; start < pass.size(); start += MERGE_WIDTH) {
+				List<Path> group = pass.subList(start, Math.min(start + MERGE_WIDTH, pass.size()));
+				if (group.size() == 1) {
+					this.runs.add(group.get(0));
+					continue;
+				}
+				Path merged = Files.createTempFile("isa4j", ".run");
+				merged.toFile().deleteOnExit();
+				this.runs.add(merged);
+				try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(merged), RUN_BUFFER_SIZE)) {
+					this.merge(group, new ArrayList<Line>(), bytes -> os.write(bytes));
+				} finally {
+					for (Path run : group)
+						Files.deleteIfExists(run);
+				}
+			}
+		} finally {
+			// Runs that weren't merged because of a failure are deleted with the others
+			this.runs.addAll(pass.subList(Math.min(start, pass.size()), pass.size()));
+		}
+	}
+
+	/**
+	 * Write the buffer to the destination as it is
+	 */
+	private void passThrough() throws IOException {
+		this.destination.write(this.buffer.array(), this.buffer.arrayOffset(), this.buffer.position());
+		this.buffer.clear();
+	}
+
+	/**
+	 * Writes all lines sorted and releases the destination.
+	 */
+	@Override
+	void release() throws IOException {
+		this.finish();
+		this.destination.release();
+	}
+
+	/**
+	 * Sort the lines written from now on. What was written before is passed
+	 * through.
+	 *
+	 * @param column the index of the column to sort by
+	 * @throws IOException if passing through fails
+	 */
+	void sortBy(int column) throws IOException {
+		this.passThrough();
+		this.column = column;
+	}
+
+	/**
+	 * Sort the lines in memory and write them to a new run
+	 */
+	private void spill() throws IOException {
+		this.lines.sort(Line::compareTo);
+		Path run = Files.createTempFile("isa4j", ".run");
+		run.toFile().deleteOnExit();
+		this.runs.add(run);
+		try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE)) {
+			for (Line line : this.lines)
+				os.write(line.bytes);
+		}
+		this.lines.clear();
+		this.memoryUsed = 0;
+	}
+
+	/**
+	 * Move the complete lines of the buffer into the current run
+	 */
+	private void takeLines() {
+		byte[] array = this.buffer.array();
+		int end = this.buffer.position();
+		int start = 0;
+		for (int i = 0; i < end; i++) {
+			if (array[i] == '\n') {
+				byte[] bytes = Arrays.copyOfRange(array, start, i + 1);
+				this.lines.add(new Line(bytes, this.column, this.runs.size()));
+				this.memoryUsed += bytes.length + LINE_OVERHEAD;
+				start = i + 1;
+			}
+		}
+		System.arraycopy(array, start, array, 0, end - start);
+		this.buffer.position(end - start);
+	}
+
+}
@@ -8,7 +8,6 @@
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,34 +41,37 @@ public class Source extends StudyOrAssayTableObject implements Commentable {
 		return this.comments;
 	}
 	
+	void emitFields(RowSink sink) {
+		sink.field(StudyAssayAttribute.SOURCE_NAME.toString());
+		sink.cell(this.name);
+		this.emitFieldsForCharacteristics(sink);
+		this.emitFieldsForComments(this.comments, sink);
+	}
+	
+	void emitFieldsForCharacteristics(RowSink sink) {
+		for(Characteristic characteristic : this.characteristics) {
+			sink.field(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory());
+			this.emitOntologyAnnotationFields(characteristic.getValue(), sink);
+		}
+	}
+	
 	/**
 	 * @return the characteristics
 	 */
 	public List<Characteristic> getCharacteristics() {
 		return characteristics;
 	}
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(StudyAssayAttribute.SOURCE_NAME.toString(), new String[]{this.name});
-		fields.putAll(this.getFieldsForCharacteristics());
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
-	}
 	
+	/**
+	 * @return a map of characteristic headers -> characteristic values
+	 * @deprecated lines are no longer written from maps, the fields are collected
+	 *             from the same path that writes them
+	 */
+	@Deprecated
 	protected Map<String, String[]> getFieldsForCharacteristics() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		for(Characteristic characteristic : this.characteristics) {
-			String characteristicName = StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory());
-			List<String> characteristicFields = new ArrayList<String>(3);
-			characteristicFields.add(characteristic.getValue().getTerm());
-			characteristicFields.addAll(this.getOntologyAnnotationExtensionFields(characteristic, c -> c.getValue()));
-			fields.put(characteristicName, characteristicFields.toArray(new String[0]));
-		}
-		
-		return fields;
+		FieldCollector collector = new FieldCollector();
+		this.emitFieldsForCharacteristics(collector);
+		return collector.toMap();
 	}
 	
 	LinkedHashMap<String, String[]> getHeaders() {
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects everything written to it in memory, in blocks, until a limit is
+ * reached and continues in a temporary file from there. The content is then
+ * copied to its final destination with {@link #copyTo(OutputStream)} and the
+ * buffer is discarded with {@link #delete()}. Not thread-safe.
+ */
+final class SpillBuffer extends OutputStream {
+
+	/**
+	 * Size in bytes of the blocks held in memory
+	 */
+	static final int BLOCK_SIZE = 1 << 16;
+
+	private final List<byte[]> blocks = new ArrayList<byte[]>();
+
+	/**
+	 * Number of bytes in the last block
+	 */
+	private int count = BLOCK_SIZE;
+
+	/**
+	 * The temporary file, once the memory limit was reached
+	 */
+	private Path file = null;
+
+	/**
+	 * Stream to the temporary file, open until the content is copied
+	 */
+	private OutputStream fileStream = null;
+
+	private final long memoryLimit;
+
+	/**
+	 * @param memoryLimit number of bytes that are kept in memory before the
+	 *                    temporary file is used
+	 */
+	SpillBuffer(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Writes the content to the given stream, which is not closed.
+	 *
+	 * @param os the stream to copy to
+	 * @throws IOException if reading the temporary file or writing fails
+	 */
+	void copyTo(OutputStream os) throws IOException {
+		for (int i = 0; i < this.blocks.size(); i++)
+			os.write(this.blocks.get(i), 0, i == this.blocks.size() - 1 ? this.count : BLOCK_SIZE);
+		if (this.file != null) {
+			this.fileStream.close();
+			try (InputStream is = Files.newInputStream(this.file)) {
+				is.transferTo(os);
+			}
+		}
+	}
+
+	/**
+	 * Frees the memory and deletes the temporary file, if any.
+	 *
+	 * @throws IOException if the temporary file can't be deleted
+	 */
+	void delete() throws IOException {
+		this.blocks.clear();
+		if (this.file != null) {
+			this.fileStream.close();
+			Files.deleteIfExists(this.file);
+			this.file = null;
+		}
+	}
+
+	/**
+	 * @return the number of bytes held in memory
+	 */
+	private long inMemory() {
+		return this.blocks.isEmpty() ? 0 : (long) (this.blocks.size() - 1) * BLOCK_SIZE + this.count;
+	}
+
+	/**
+	 * Make room for more bytes, either with a new block or by switching to the
+	 * temporary file
+	 */
+	private void spill() throws IOException {
+		if (this.inMemory() + BLOCK_SIZE <= this.memoryLimit) {
+			this.blocks.add(new byte[BLOCK_SIZE]);
+			this.count = 0;
+			return;
+		}
+		this.file = Files.createTempFile("isa4j", ".spill");
+		this.file.toFile().deleteOnExit();
+		this.fileStream = Files.newOutputStream(this.file);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (this.file != null) {
+				this.fileStream.write(bytes, offset, length);
+				return;
+			}
+			if (this.count == BLOCK_SIZE) {
+				this.spill();
+				continue;
+			}
+			int part = Math.min(length, BLOCK_SIZE - this.count);
+			System.arraycopy(bytes, offset, this.blocks.get(this.blocks.size() - 1), this.count, part);
+			this.count += part;
+			offset += part;
+			length -= part;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.write(new byte[] { (byte) b }, 0, 1);
+	}
+
+}
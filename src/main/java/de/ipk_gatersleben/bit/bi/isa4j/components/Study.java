@@ -124,6 +124,7 @@ public class Study extends WideTableFile implements Commentable {
 
 		assay.setStudy(this);
 		this.assays.add(assay);
+		this.modified();
 	}
 
 	/**
@@ -134,6 +135,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void addContact(Person person) {
 		Objects.requireNonNull(person);
 		this.contacts.add(person);
+		this.modified();
 	}
 
 	/**
@@ -144,16 +146,19 @@ public class Study extends WideTableFile implements Commentable {
 	public void addDesignDescriptor(OntologyAnnotation designDescriptor) {
 		Objects.requireNonNull(designDescriptor);
 		this.designDescriptors.add(designDescriptor);
+		this.modified();
 	}
 
 	public void addFactor(Factor factor) {
 		Objects.requireNonNull(factor);
 		this.factors.add(factor);
+		this.modified();
 	}
 
 	public void addProtocol(Protocol protocol) {
 		Objects.requireNonNull(protocol);
 		this.protocols.add(protocol);
+		this.modified();
 	}
 
 	/**
@@ -164,6 +169,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void addPublication(Publication publication) {
 		Objects.requireNonNull(publication);
 		this.publications.add(publication);
+		this.modified();
 	}
 
 	/**
@@ -281,6 +287,7 @@ public class Study extends WideTableFile implements Commentable {
 		for (Assay assay : assays) {
 			assay.setStudy(this);
 		}
+		this.modified();
 	}
 
 	/**
@@ -291,6 +298,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void setContacts(List<Person> contacts) {
 		contacts.stream().forEach(Objects::requireNonNull);
 		this.contacts = contacts;
+		this.modified();
 	}
 
 	/**
@@ -300,6 +308,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setDescription(String description) {
 		this.description = StringUtil.sanitize(description);
+		this.modified();
 	}
 
 	/**
@@ -310,6 +319,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void setDesignDescriptors(List<OntologyAnnotation> designDescriptors) {
 		designDescriptors.stream().forEach(Objects::requireNonNull);
 		this.designDescriptors = designDescriptors;
+		this.modified();
 	}
 
 	/**
@@ -317,6 +327,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setFactors(List<Factor> factors) {
 		this.factors = factors;
+		this.modified();
 	}
 
 	/**
@@ -324,6 +335,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setIdentifier(String identifier) {
 		this.identifier = StringUtil.sanitize(Objects.requireNonNull(identifier, "Study identifier cannot be null"));
+		this.modified();
 	}
 
 	/**
@@ -347,6 +359,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void setProtocols(List<Protocol> protocols) {
 		protocols.stream().forEach(Objects::requireNonNull);
 		this.protocols = protocols;
+		this.modified();
 	}
 
 	/**
@@ -357,6 +370,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void setPublications(ArrayList<Publication> publications) {
 		publications.stream().forEach(Objects::requireNonNull);
 		this.publications = publications;
+		this.modified();
 	}
 
 	/**
@@ -365,6 +379,7 @@ public class Study extends WideTableFile implements Commentable {
 	public void setPublications(List<Publication> publications) {
 		publications.stream().forEach(Objects::requireNonNull);
 		this.publications = publications;
+		this.modified();
 	}
 
 	/**
@@ -374,6 +389,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setPublicReleaseDate(Date publicReleaseDate) {
 		this.publicReleaseDate = publicReleaseDate;
+		this.modified();
 	}
 
 	/**
@@ -383,6 +399,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setSubmissionDate(Date submissionDate) {
 		this.submissionDate = submissionDate;
+		this.modified();
 	}
 
 	/**
@@ -392,6 +409,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void setTitle(String title) {
 		this.title = StringUtil.sanitize(title);
+		this.modified();
 	}
 
 	@Override
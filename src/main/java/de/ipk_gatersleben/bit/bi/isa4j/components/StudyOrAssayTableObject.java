@@ -19,8 +19,87 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public abstract class StudyOrAssayTableObject {
 
+	/**
+	 * Collects the fields pushed into a {@link RowSink} into lists, for the map
+	 * based methods
+	 */
+	static final class FieldCollector implements RowSink {
+
+		private List<String> current;
+
+		private final LinkedHashMap<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+
+		public void cell(String value) {
+			this.current.add(value);
+		}
+
+		public void field(String key) {
+			this.current = new ArrayList<String>(3);
+			this.values.put(key, this.current);
+		}
+
+		public void field(StudyAssayAttribute attribute, String name) {
+			this.field(StringUtil.putNameInAttribute(attribute, name));
+		}
+
+		/**
+		 * @return the values of the field that was started last
+		 */
+		List<String> getCurrent() {
+			return this.current;
+		}
+
+		/**
+		 * @return the collected fields, header key -> values
+		 */
+		HashMap<String, String[]> toMap() {
+			HashMap<String, String[]> fields = new HashMap<String, String[]>();
+			for (Map.Entry<String, List<String>> field : this.values.entrySet())
+				fields.put(field.getKey(), field.getValue().toArray(new String[0]));
+			return fields;
+		}
+	}
+
 	private StudyOrAssayTableObject nextStudyOrAssayTableObject;
 
+	/**
+	 * Push the fields of this object into a {@link RowSink}, in the same order as
+	 * the headers returned by {@link #getHeaders()}. This is used to write the
+	 * lines of a {@link Study} or {@link Assay}: the sink receives the values
+	 * directly, without any maps, lists or arrays being built in between.
+	 * 
+	 * @param sink the sink receiving the fields
+	 */
+	abstract void emitFields(RowSink sink);
+
+	void emitFieldsForComments(CommentCollection comments, RowSink sink) {
+		for (Comment comment : comments.getAll()) {
+			sink.field(StudyAssayAttribute.COMMENT, comment.getName());
+			sink.cell(comment.getValue());
+		}
+	}
+
+	<T extends Value<?>> void emitFieldsForValues(StudyAssayAttribute tName, List<T> tValues,
+			Function<T, String> lambda, RowSink sink) {
+		for (T tValue : tValues) {
+			sink.field(tName, lambda.apply(tValue));
+			this.emitOntologyAnnotationFields(tValue.getValue(), sink);
+			if (tValue.getUnit() != null)
+				this.emitOntologyAnnotationFields(tValue.getUnit(), sink);
+		}
+	}
+
+	/**
+	 * Emits the term of an {@link OntologyAnnotation} followed by its Term Source
+	 * REF and Term Accession Number, if they are present
+	 * 
+	 * @param ontologyAnnotation the annotation to emit
+	 * @param sink               the sink receiving the values
+	 */
+	void emitOntologyAnnotationFields(OntologyAnnotation ontologyAnnotation, RowSink sink) {
+		sink.ontologyAnnotation(ontologyAnnotation);
+	}
+
 	/**
 	 * Return a map of field headers -> field values for this object, as it would be
 	 * printed in a Study or Assay File. For example, for a Source object this could
@@ -34,38 +113,45 @@ public abstract class StudyOrAssayTableObject {
 	 * "ParameterValue[Container type]" => ["pot", AgroOntology,
 	 * "http://purl.obolibrary.org/obo/AGRO_00000309"], }
 	 * 
+	 * The map is collected from {@link #emitFields(RowSink)}, writing lines does
+	 * not use it anymore.
+	 * 
 	 * @return
 	 */
-	abstract Map<String, String[]> getFields();
+	Map<String, String[]> getFields() {
+		FieldCollector collector = new FieldCollector();
+		this.emitFields(collector);
+		return collector.toMap();
+	}
 
+	/**
+	 * @param comments the comments
+	 * @return a map of comment headers -> comment values
+	 * @deprecated lines are no longer written from maps, the fields are collected
+	 *             from the same path that writes them
+	 */
+	@Deprecated
 	protected HashMap<String, String[]> getFieldsForComments(CommentCollection comments) {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-
-		for (Comment comment : comments.getAll()) {
-			String commentName = StringUtil.putNameInAttribute(StudyAssayAttribute.COMMENT, comment.getName());
-			fields.put(commentName, new String[] { comment.getValue() });
-		}
-
-		return fields;
+		FieldCollector collector = new FieldCollector();
+		this.emitFieldsForComments(comments, collector);
+		return collector.toMap();
 	}
 
+	/**
+	 * @param <T>     the type of the values
+	 * @param tName   the attribute the names are put in
+	 * @param tValues the values
+	 * @param lambda  returns the name of a value
+	 * @return a map of value headers -> term, extensions, unit and its extensions
+	 * @deprecated lines are no longer written from maps, the fields are collected
+	 *             from the same path that writes them
+	 */
+	@Deprecated
 	protected <T extends Value<?>> HashMap<String, String[]> getFieldsForValues(StudyAssayAttribute tName,
 			List<T> tValues, Function<T, String> lambda) {
-		HashMap<String, String[]> headers = new HashMap<String, String[]>();
-
-		for (T tValue : tValues) {
-			List<String> tValueFields = new ArrayList<String>(3);
-			String tValueName = StringUtil.putNameInAttribute(tName, lambda.apply(tValue));
-			tValueFields.add(tValue.getValue().getTerm());
-			tValueFields.addAll(this.getOntologyAnnotationExtensionFields(tValue, c -> c.getValue()));
-			if (tValue.getUnit() != null) {
-				tValueFields.add(tValue.getUnit().getTerm());
-				tValueFields.addAll(this.getOntologyAnnotationExtensionFields(tValue, c -> c.getUnit()));
-			}
-			headers.put(tValueName, tValueFields.toArray(new String[0]));
-		}
-
-		return headers;
+		FieldCollector collector = new FieldCollector();
+		this.emitFieldsForValues(tName, tValues, lambda, collector);
+		return collector.toMap();
 	}
 
 	/**
@@ -116,19 +202,27 @@ public abstract class StudyOrAssayTableObject {
 		return nextStudyOrAssayTableObject;
 	}
 
+	/**
+	 * @param <T>    the type
+	 * @param thing  the value
+	 * @param lambda returns the annotation of the value
+	 * @return the Term Source REF and Term Accession Number of the annotation, if
+	 *         they are present
+	 * @deprecated lines are no longer written from maps, the fields are collected
+	 *             from the same path that writes them
+	 */
+	@Deprecated
 	protected <T> ArrayList<String> getOntologyAnnotationExtensionFields(T thing,
 			Function<T, OntologyAnnotation> lambda) {
-		ArrayList<String> extensionFields = new ArrayList<String>(2);
-		OntologyAnnotation ontologyAnnotation = lambda.apply(thing);
-		if (ontologyAnnotation.getSourceREF() != null)
-			extensionFields.add(ontologyAnnotation.getSourceREF().getName());
-		if (ontologyAnnotation.getTermAccession() != null)
-			extensionFields.add(ontologyAnnotation.getTermAccession());
-		return extensionFields;
+		FieldCollector collector = new FieldCollector();
+		collector.field(StudyAssayAttribute.TERM_SOURCE_REF.toString());
+		this.emitOntologyAnnotationFields(lambda.apply(thing), collector);
+		List<String> values = collector.getCurrent();
+		return new ArrayList<String>(values.subList(1, values.size()));
 	}
 
 	/**
-	 * These two methods are meant to simplify getFields and getHeaders for Objects
+	 * This method is meant to simplify getHeaders for Objects
 	 * that can have TERM SOURCE REF and TERM ACCESSION NUMBERS but don't have to
 	 * 
 	 * @param <T>    the type
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+/**
+ * Output backend of a {@link WideTableFile}. Everything that is written is
+ * encoded into a {@link ByteBuffer}, and whenever the buffer is full it is
+ * handed over to {@link #drain()}, which makes room for more. How the bytes
+ * reach their destination is up to the implementation.
+ */
+abstract class TableOutput {
+
+	/**
+	 * The smallest buffer that can hold any encoded character
+	 */
+	static final int MIN_BUFFER_SIZE = 16;
+
+	/**
+	 * The buffer everything is encoded into, may be replaced by {@link #drain()}
+	 */
+	ByteBuffer buffer;
+
+	private final CharsetEncoder encoder = Props.DEFAULT_CHARSET.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * @param buffer the buffer to encode into
+	 */
+	TableOutput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Writes everything that was buffered and closes the destination.
+	 *
+	 * @throws IOException if writing or closing fails
+	 */
+	abstract void close() throws IOException;
+
+	/**
+	 * Make room in the buffer, either by writing its content somewhere and
+	 * clearing it or by replacing it. Called whenever the buffer is full.
+	 *
+	 * @throws IOException if writing fails
+	 */
+	abstract void drain() throws IOException;
+
+	/**
+	 * Writes everything that was buffered, the destination stays open.
+	 *
+	 * @throws IOException if writing fails
+	 */
+	abstract void flush() throws IOException;
+
+	/**
+	 * Writes everything that was buffered and frees all resources, but leaves the
+	 * destination open.
+	 *
+	 * @throws IOException if writing fails
+	 */
+	void release() throws IOException {
+		this.flush();
+	}
+
+	/**
+	 * Write bytes that are already encoded.
+	 *
+	 * @param bytes  the encoded bytes
+	 * @param offset the offset of the first byte to write
+	 * @param length the number of bytes to write
+	 * @throws IOException if draining the buffer fails
+	 */
+	void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > this.buffer.remaining()) {
+			int part = this.buffer.remaining();
+			this.buffer.put(bytes, offset, part);
+			offset += part;
+			length -= part;
+			this.drain();
+		}
+		this.buffer.put(bytes, offset, length);
+	}
+
+	/**
+	 * Encode the characters into the buffer, draining it whenever it is full.
+	 * ISA-Tab content is almost entirely ASCII, so ASCII characters are copied
+	 * into the buffer directly and only runs of other characters go through the
+	 * {@link CharsetEncoder}, which gives the same bytes as encoding everything
+	 * with it.
+	 *
+	 * @param chars the characters to write, usually a complete line
+	 * @throws IOException if draining the buffer fails
+	 */
+	void write(CharSequence chars) throws IOException {
+		int length = chars.length();
+		int i = 0;
+		while (i < length) {
+			ByteBuffer buffer = this.buffer;
+			int position = buffer.position();
+			int end = Math.min(length, i + buffer.remaining());
+			if (buffer.hasArray()) {
+				byte[] array = buffer.array();
+				int offset = buffer.arrayOffset();
+				for (char c; i < end && (c = chars.charAt(i)) < 0x80; i++)
+					array[offset + position++] = (byte) c;
+			} else {
+				for (char c; i < end && (c = chars.charAt(i)) < 0x80; i++)
+					buffer.put(position++, (byte) c);
+			}
+			buffer.position(position);
+
+			if (i == length)
+				return;
+			if (chars.charAt(i) < 0x80) {
+				// Stopped because the buffer is full
+				this.drain();
+				continue;
+			}
+			// Surrogate pairs are never split, both halves are part of the run
+			int runEnd = i + 1;
+			while (runEnd < length && chars.charAt(runEnd) >= 0x80)
+				runEnd++;
+			CharBuffer in = CharBuffer.wrap(chars, i, runEnd);
+			this.encoder.reset();
+			while (this.encoder.encode(in, this.buffer, true) == CoderResult.OVERFLOW)
+				this.drain();
+			i = runEnd;
+		}
+	}
+
+}
@@ -7,37 +7,150 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Compression;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Deduplication;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public abstract class WideTableFile implements Commentable {
 
+	/**
+	 * Whether outputs that are set from now on are written by a background thread
+	 */
+	private boolean asynchronous = false;
+
+	/**
+	 * Size of the buffer of outputs that are set from now on
+	 */
+	private int bufferSize = Props.DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Number of lines between two checkpoints, 0 if no checkpoints are written
+	 */
+	private long checkpointInterval = 0;
+
 	private CommentCollection comments = new CommentCollection();
 
+	/**
+	 * Compression of files that are opened from now on
+	 */
+	private Compression compression = Compression.NONE;
+
+	/**
+	 * Deduplication of outputs that are set from now on
+	 */
+	private Deduplication deduplication = Deduplication.NONE;
+
+	/**
+	 * Memory in bytes for recognizing duplicate lines of outputs that are set from
+	 * now on
+	 */
+	private long deduplicationMemory = Props.DEFAULT_DEDUPLICATION_MEMORY;
+
+	/**
+	 * The file opened with {@link #openFile()} or {@link #resumeFile(StudyOrAssayTableObject)}
+	 * if checkpoints can be written for it, otherwise null
+	 */
+	private FileChannel fileChannel = null;
+
 	private String fileName;
 
+	/**
+	 * Formats the rows according to the compiled headers, exists as long as the
+	 * headers do
+	 */
+	private RowPlan.Formatter formatter = null;
+
+	/**
+	 * Number of threads formatting rows in {@link #writeLines(Iterator)}
+	 */
+	private int formattingThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Fingerprint of the header line, exists as long as the headers do
+	 */
+	private String headerFingerprint = null;
+
 	private ArrayList<LinkedHashMap<String, String[]>> headers = null;
 
 	private final Logger logger = LoggerFactory.getLogger(WideTableFile.class);
 
-	private OutputStreamWriter outputstreamwriter;
+	/**
+	 * Counts the changes made by the setters and adders, so that cached sections
+	 * of an investigation file can be recognized as outdated
+	 */
+	private int modifications = 0;
+
+	private TableOutput output;
+
+	/**
+	 * The compiled headers, exists as long as the headers do
+	 */
+	private RowPlan rowPlan = null;
+
+	/**
+	 * Reused for every row to avoid allocating a new builder each time
+	 */
+	private final StringBuilder rowBuilder = new StringBuilder();
+
+	/**
+	 * Recognizes lines that were already written to the current or last output,
+	 * null if lines are not deduplicated
+	 */
+	private DuplicateRowFilter rowFilter = null;
+
+	/**
+	 * Number of lines passed for writing to the current output, including the
+	 * duplicates that were skipped, -1 if unknown. Checkpoints are due by this
+	 * number, so that writing can be resumed with the right line.
+	 */
+	private long rowsTaken = 0;
+
+	/**
+	 * Number of lines written to the current output, -1 if unknown
+	 */
+	private long rowsWritten = 0;
+
+	/**
+	 * Header of the column that the lines of outputs set from now on are sorted
+	 * by, null if lines are written in order
+	 */
+	private String sortColumn = null;
+
+	/**
+	 * Sorts the lines of the current output, null if they are written in order
+	 */
+	private SortingTableOutput sortingOutput = null;
+
+	/**
+	 * Memory in bytes for sorting lines of outputs that are set from now on
+	 */
+	private long sortMemory = Props.DEFAULT_SORT_MEMORY;
 
 	/**
 	 * Constructor, give the filename
@@ -48,22 +161,166 @@ public abstract class WideTableFile implements Commentable {
 		this.setFileName(fileName);
 	}
 
+	private void checkNoOutput() {
+		if (this.output != null) {
+			throw new IllegalStateException(
+					"A file or stream is already set. Please unset it first.");
+		}
+	}
+
+	/**
+	 * Write everything to disk and store the number of lines and the length of
+	 * the file in the sidecar file
+	 */
+	private void checkpoint() throws IOException {
+		this.output.flush();
+		this.fileChannel.force(false);
+		new Checkpoint(this.rowsTaken, this.rowsWritten, this.fileChannel.position(), this.headerFingerprint)
+				.write(Checkpoint.pathOf(this.fileName));
+		logger.debug("{}: Checkpoint after {} lines, {} of them written.", this, this.rowsTaken, this.rowsWritten);
+	}
+
 	/**
-	 * Closes the file and forgets all headers.
+	 * Closes the file and forgets all headers. If checkpoints were written, the
+	 * finished file doesn't need them anymore and they are deleted.
 	 * 
 	 * @throws IOException is unable to close file
 	 */
 	public void closeFile() throws IOException {
 		logger.debug("{}: Closing output file.", this);
-		this.outputstreamwriter.close();
-		this.outputstreamwriter = null;
-		this.headers = null;
+		boolean checkpointing = this.isCheckpointing();
+		try {
+			this.output.close();
+		} finally {
+			this.output = null;
+			this.fileChannel = null;
+			this.headers = null;
+			this.headerFingerprint = null;
+			this.rowPlan = null;
+			this.formatter = null;
+			this.sortingOutput = null;
+		}
+		if (this.rowFilter != null)
+			logger.debug("{}: Skipped {} duplicate lines, using {} bytes.", this, this.rowFilter.getDuplicates(),
+					this.rowFilter.memoryUsed());
+		if (checkpointing)
+			Files.deleteIfExists(Checkpoint.pathOf(this.fileName));
+	}
+
+	/**
+	 * Collect the header groups of a line
+	 */
+	private ArrayList<LinkedHashMap<String, String[]>> collectHeaders(StudyOrAssayTableObject example) {
+		ArrayList<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+		for (; example != null; example = example.getNextStudyOrAssayTableObject())
+			headers.add(example.getHeaders());
+		return headers;
 	}
 
 	public CommentCollection comments() {
 		return this.comments;
 	}
 
+	/**
+	 * Count lines that were passed for writing and how many of them were written,
+	 * i.e. not skipped as duplicates, and write a checkpoint if it is due. Lines
+	 * written in parallel are counted in segments that end where a checkpoint is
+	 * due, see {@link #segmentLimit()}.
+	 */
+	private void countRows(long taken, long written) throws IOException {
+		if (this.rowsTaken < 0)
+			return;
+		this.rowsTaken += taken;
+		this.rowsWritten += written;
+		if (this.isCheckpointing() && this.rowsTaken % this.checkpointInterval == 0)
+			this.checkpoint();
+	}
+
+	/**
+	 * Create a {@link RowTemplate} from an example line, to write many lines that
+	 * differ in only a few cells. If no headers were written yet, they are written
+	 * from the example.
+	 * 
+	 * @param example the first object of the example line
+	 * @return the template, which can be used as long as the file stays open
+	 * @throws IOException if unable to write the headers
+	 */
+	public RowTemplate createRowTemplate(StudyOrAssayTableObject example) throws IOException {
+		if (this.output == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		if (this.headers == null)
+			this.writeHeadersFromExample(example);
+		return new RowTemplate(this, example);
+	}
+
+	/**
+	 * @param headers the header groups
+	 * @return the header line, including the line break
+	 */
+	private StringBuilder formatHeaderLine(List<LinkedHashMap<String, String[]>> headers) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < headers.size(); i++) {
+			if (i > 0)
+				sb.append(Symbol.TAB.toString());
+			sb.append(headers.get(i).values().stream().map(o -> String.join(Symbol.TAB.toString(), o))
+					.collect(Collectors.joining(Symbol.TAB.toString())));
+		}
+		return sb.append(Symbol.ENTER.toString());
+	}
+
+	/**
+	 * @return the size in bytes of the output buffer
+	 */
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * @return the number of lines between two checkpoints, 0 if no checkpoints are
+	 *         written
+	 */
+	public long getCheckpointInterval() {
+		return this.checkpointInterval;
+	}
+
+	/**
+	 * @return the compression of files that are opened with {@link #openFile()}
+	 */
+	public Compression getCompression() {
+		return this.compression;
+	}
+
+	/**
+	 * @return how duplicate lines are recognized in outputs that are set from now
+	 *         on
+	 */
+	public Deduplication getDeduplication() {
+		return this.deduplication;
+	}
+
+	/**
+	 * @return the memory in bytes for recognizing duplicate lines
+	 */
+	public long getDeduplicationMemory() {
+		return this.deduplicationMemory;
+	}
+
+	/**
+	 * @return the memory in bytes used so far for recognizing duplicate lines of
+	 *         the current or last output, 0 if its lines are not deduplicated
+	 */
+	public long getDeduplicationMemoryUsed() {
+		return this.rowFilter == null ? 0 : this.rowFilter.memoryUsed();
+	}
+
+	/**
+	 * @return the number of duplicate lines that were skipped in the current or
+	 *         last output
+	 */
+	public long getDuplicateRows() {
+		return this.rowFilter == null ? 0 : this.rowFilter.getDuplicates();
+	}
+
 	/**
 	 * Get filename of study
 	 *
@@ -73,10 +330,118 @@ public abstract class WideTableFile implements Commentable {
 		return fileName;
 	}
 
+	/**
+	 * @return the number of threads formatting rows in {@link #writeLines(Iterator)}
+	 */
+	public int getFormattingThreads() {
+		return this.formattingThreads;
+	}
+
 	public ArrayList<LinkedHashMap<String, String[]>> getHeaders() {
 		return this.headers;
 	}
 
+	/**
+	 * @return the number of changes made by the setters and adders so far
+	 */
+	int getModifications() {
+		return this.modifications;
+	}
+
+	/**
+	 * @return the compiled headers, or null if no headers were written yet
+	 */
+	RowPlan getRowPlan() {
+		return this.rowPlan;
+	}
+
+	/**
+	 * @return the number of lines written to the current file or stream, not
+	 *         counting the header line, or -1 if the number is unknown because
+	 *         writing lines in parallel failed
+	 */
+	public long getRowsWritten() {
+		return this.rowsWritten;
+	}
+
+	/**
+	 * @return the header of the column that lines are sorted by, or null if they
+	 *         are written in order
+	 */
+	public String getSortColumn() {
+		return this.sortColumn;
+	}
+
+	/**
+	 * @return the memory in bytes for sorting lines
+	 */
+	public long getSortMemory() {
+		return this.sortMemory;
+	}
+
+	/**
+	 * @param headers the header groups
+	 * @return the index of the first column with the header the lines are sorted
+	 *         by
+	 * @throws IllegalStateException if there is no such column
+	 */
+	private int indexOfSortColumn(List<LinkedHashMap<String, String[]>> headers) {
+		int column = 0;
+		for (LinkedHashMap<String, String[]> group : headers) {
+			for (String[] columns : group.values()) {
+				for (String header : columns) {
+					if (header.equals(this.sortColumn))
+						return column;
+					column++;
+				}
+			}
+		}
+		throw new IllegalStateException("There is no column '" + this.sortColumn + "' to sort the lines by");
+	}
+
+	/**
+	 * @return whether outputs are written by a background thread
+	 */
+	public boolean isAsynchronous() {
+		return this.asynchronous;
+	}
+
+	/**
+	 * @return whether checkpoints are written for the current output
+	 */
+	private boolean isCheckpointing() {
+		return this.checkpointInterval > 0 && this.fileChannel != null && this.rowsTaken >= 0
+				&& this.headers != null && this.sortingOutput == null;
+	}
+
+	/**
+	 * @param column a column of the header line
+	 * @return whether the column belongs to the field before it
+	 */
+	private boolean isExtensionColumn(String column) {
+		return column.equals(StudyAssayAttribute.TERM_SOURCE_REF.toString())
+				|| column.equals(StudyAssayAttribute.TERM_ACCESSION_NUMBER.toString())
+				|| column.equals(StudyAssayAttribute.UNIT.toString());
+	}
+
+	/**
+	 * @param column a column of the header line
+	 * @return whether the column is a field of the object before it
+	 */
+	private boolean isFieldColumn(String column) {
+		if (column.equals(StudyAssayAttribute.PROTOCOL_DATE.toString()))
+			return true;
+		for (StudyAssayAttribute attribute : new StudyAssayAttribute[] { StudyAssayAttribute.CHARACTERISTICS,
+				StudyAssayAttribute.COMMENT, StudyAssayAttribute.FACTOR_VALUE, StudyAssayAttribute.PARAMETER_VALUE }) {
+			String template = attribute.toString();
+			int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+			if (column.length() >= template.length() - 1 && column.startsWith(template.substring(0, wildcard))
+					&& column.endsWith(template.substring(wildcard + 1)))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Returns true if headers have already been written to file/stream. Can be used
 	 * within a loop to make sure headers are exactly written once
@@ -87,16 +452,374 @@ public abstract class WideTableFile implements Commentable {
 		return this.headers != null;
 	}
 
-	public void openFile() throws FileNotFoundException {
+	/**
+	 * Count a change made through a setter or adder of a study or assay
+	 */
+	void modified() {
+		this.modifications++;
+	}
+
+	/**
+	 * Direct the output to the file with the name of this study or assay,
+	 * compressed as set with {@link #setCompression(Compression)}. Uncompressed
+	 * files get checkpoints if {@link #setCheckpointInterval(long)} was set.
+	 * 
+	 * @throws IOException if the file can't be opened
+	 */
+	public void openFile() throws IOException {
 		logger.debug("{}: Directing output to File '{}'.", this, this.fileName);
-		this.setOutputStream(new FileOutputStream(this.fileName));
+		this.checkNoOutput();
+		if (this.compression == Compression.NONE) {
+			FileChannel channel = new FileOutputStream(this.fileName).getChannel();
+			this.setOutputChannel(channel);
+			this.fileChannel = channel;
+			return;
+		}
+		FileOutputStream file = new FileOutputStream(this.fileName);
+		try {
+			this.setOutputStream(this.compression.wrap(file, this.bufferSize));
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Continue writing an existing file. The header line of the file (and only
+	 * the header line, however large the file is) is read and turned back into
+	 * header groups, so that the lines written from now on are checked against
+	 * the headers of the file just like lines written with {@link #openFile()}.
+	 * New lines are appended after the existing ones. If the file doesn't exist
+	 * or is empty, it is written from the start, headers included.<br>
+	 * <br>
+	 * The header groups are recognized by their columns: Characteristics,
+	 * Parameter Values, Factor Values, Comments and Dates (with their Unit, Term
+	 * Source REF and Term Accession Number columns) belong to the object before
+	 * them, every other column starts the next object.<br>
+	 * <br>
+	 * Appended files are neither compressed nor checkpointed.
+	 * 
+	 * @throws IOException if the file can't be opened or read
+	 */
+	public void openFileForAppend() throws IOException {
+		logger.debug("{}: Appending output to File '{}'.", this, this.fileName);
+		this.checkNoOutput();
+		if (this.compression != Compression.NONE)
+			throw new IllegalStateException("Compressed files can't be appended to");
+		FileChannel channel = FileChannel.open(Paths.get(this.fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			String headerLine = this.readHeaderLine(channel);
+			ArrayList<LinkedHashMap<String, String[]>> headers = headerLine == null ? null
+					: this.parseHeaderLine(headerLine);
+			channel.position(channel.size());
+			this.setOutput(new BufferedTableOutput(channel, this.bufferSize));
+			if (headers != null)
+				this.setHeaders(headers, headerLine + Symbol.ENTER.toString());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Like {@link #openFile()}, but the lines are encoded directly into memory
+	 * mapped regions of the file instead of being copied through a buffer, and the
+	 * operating system writes them back to disk. The first region has the size of
+	 * {@link #getBufferSize()}, every following region is twice as large up to 256
+	 * MiB. This is meant for very large files.<br>
+	 * <br>
+	 * <b>NOTE: The file has to be finished with '.closeFile()' or
+	 * '.releaseStream()', which truncate it to the length that was actually
+	 * written and close it.</b>
+	 * 
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public void openMappedFile() throws IOException {
+		logger.debug("{}: Directing output to memory mapped File '{}'.", this, this.fileName);
+		this.checkNoOutput();
+		if (this.compression != Compression.NONE)
+			throw new IllegalStateException("Memory mapped files can't be compressed");
+		FileChannel channel = FileChannel.open(Paths.get(this.fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			this.setOutput(new MappedTableOutput(channel, this.bufferSize));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Split a header line into header groups, see {@link #openFileForAppend()}
+	 * 
+	 * @param headerLine the header line, without line break
+	 * @return the header groups
+	 */
+	private ArrayList<LinkedHashMap<String, String[]>> parseHeaderLine(String headerLine) {
+		ArrayList<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+		LinkedHashMap<String, String[]> group = null;
+		List<String> columns = new ArrayList<String>(3);
+		for (String column : headerLine.split(Symbol.TAB.toString(), -1)) {
+			if (group != null && this.isExtensionColumn(column)) {
+				columns.add(column);
+				continue;
+			}
+			if (group != null)
+				group.put(columns.get(0), columns.toArray(new String[0]));
+			if (group == null || !this.isFieldColumn(column)) {
+				group = new LinkedHashMap<String, String[]>();
+				headers.add(group);
+			}
+			columns.clear();
+			columns.add(column);
+		}
+		group.put(columns.get(0), columns.toArray(new String[0]));
+		return headers;
+	}
+
+	/**
+	 * Record the lines of a resumed file in the duplicate filter
+	 *
+	 * @param channel the file
+	 * @param start   the offset of the first line after the header line
+	 * @param end     the length of the file
+	 */
+	private void readRowFilter(FileChannel channel, long start, long end) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		ByteBuffer block = ByteBuffer.allocate(1 << 16);
+		for (long position = start; position < end;) {
+			block.clear();
+			block.limit((int) Math.min(block.capacity(), end - position));
+			int read = channel.read(block, position);
+			if (read < 0)
+				throw new IOException("File '" + this.fileName + "' is shorter than at the checkpoint");
+			int lineStart = 0;
+			for (int i = 0; i < read; i++) {
+				if (block.get(i) == '\n') {
+					line.write(block.array(), lineStart, i + 1 - lineStart);
+					this.rowFilter.add(new String(line.toByteArray(), Props.DEFAULT_CHARSET));
+					line.reset();
+					lineStart = i + 1;
+				}
+			}
+			line.write(block.array(), lineStart, read - lineStart);
+			position += read;
+		}
+	}
+
+	/**
+	 * Read the first line of a file, without reading more of the file than
+	 * necessary
+	 * 
+	 * @param channel the file
+	 * @return the header line without line break, or null if the file is empty
+	 * @throws IOException if the file can't be read
+	 */
+	private String readHeaderLine(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size == 0)
+			return null;
+		ByteBuffer last = ByteBuffer.allocate(1);
+		channel.read(last, size - 1);
+		if (last.get(0) != '\n')
+			throw new IllegalStateException("File '" + this.fileName + "' doesn't end with a line break");
+
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		ByteBuffer block = ByteBuffer.allocate(1 << 13);
+		for (long position = 0;; position += block.limit()) {
+			block.clear();
+			channel.read(block, position);
+			block.flip();
+			for (int i = 0; i < block.limit(); i++) {
+				if (block.get(i) == '\n') {
+					line.write(block.array(), 0, i);
+					String headerLine = new String(line.toByteArray(), Props.DEFAULT_CHARSET);
+					return headerLine.endsWith("\r") ? headerLine.substring(0, headerLine.length() - 1) : headerLine;
+				}
+			}
+			line.write(block.array(), 0, block.limit());
+		}
 	}
 
 	public void releaseStream() throws IOException {
 		logger.debug("{}: Releasing output stream.", this);
-		this.outputstreamwriter.flush();
-		this.outputstreamwriter = null;
-		this.headers = null;
+		try {
+			this.output.release();
+		} finally {
+			this.output = null;
+			this.fileChannel = null;
+			this.headers = null;
+			this.headerFingerprint = null;
+			this.rowPlan = null;
+			this.formatter = null;
+			this.sortingOutput = null;
+		}
+	}
+
+	/**
+	 * Continue writing a file that was interrupted, e.g. by a crash, from its last
+	 * checkpoint (see {@link #setCheckpointInterval(long)}). The file is truncated
+	 * to the length it had at the checkpoint, so that it ends with the last line
+	 * that was written before the checkpoint, and opened for writing further
+	 * lines. The headers are derived from the example line and must be the same
+	 * as the header line of the file and of the checkpoint. If lines are
+	 * deduplicated (see {@link #setDeduplication(Deduplication)}), the lines in
+	 * the file are read back so that they are not written again.<br>
+	 * <br>
+	 * Checkpoints continue to be written with the interval that is set.
+	 * 
+	 * @param example the first object of a line with the same headers as the file
+	 * @return the number of lines that were passed for writing before the
+	 *         checkpoint, including skipped duplicates, i.e. the index of the next
+	 *         line to write
+	 * @throws IOException if the checkpoint or the file can't be read, or the file
+	 *                     is shorter than at the checkpoint
+	 */
+	public long resumeFile(StudyOrAssayTableObject example) throws IOException {
+		logger.debug("{}: Resuming File '{}' from its last checkpoint.", this, this.fileName);
+		this.checkNoOutput();
+		Checkpoint checkpoint = Checkpoint.read(Checkpoint.pathOf(this.fileName));
+		ArrayList<LinkedHashMap<String, String[]>> headers = this.collectHeaders(example);
+		StringBuilder headerLine = this.formatHeaderLine(headers);
+		if (!Checkpoint.fingerprint(headerLine).equals(checkpoint.headerFingerprint))
+			throw new IllegalStateException("The headers of the example don't match the headers of the checkpoint");
+
+		FileChannel channel = FileChannel.open(Paths.get(this.fileName), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			byte[] expected = headerLine.toString().getBytes(Props.DEFAULT_CHARSET);
+			if (channel.size() < checkpoint.offset || checkpoint.offset < expected.length)
+				throw new IOException("File '" + this.fileName + "' is shorter than at the checkpoint");
+			ByteBuffer actual = ByteBuffer.allocate(expected.length);
+			while (actual.hasRemaining() && channel.read(actual, actual.position()) >= 0)
+				;
+			if (!Arrays.equals(expected, actual.array()))
+				throw new IllegalStateException("The header line of the file doesn't match the checkpoint");
+			channel.truncate(checkpoint.offset);
+			channel.position(checkpoint.offset);
+			this.setOutput(new BufferedTableOutput(channel, this.bufferSize));
+			if (this.rowFilter != null)
+				this.readRowFilter(channel, expected.length, checkpoint.offset);
+		} catch (IOException | RuntimeException e) {
+			this.output = null;
+			channel.close();
+			throw e;
+		}
+		this.fileChannel = channel;
+		this.setHeaders(headers, headerLine);
+		this.rowsTaken = checkpoint.rows;
+		this.rowsWritten = checkpoint.lines;
+		return checkpoint.rows;
+	}
+
+	/**
+	 * @return the number of lines that can be written before the next checkpoint
+	 *         is due
+	 */
+	private long segmentLimit() {
+		if (!this.isCheckpointing())
+			return Long.MAX_VALUE;
+		return this.checkpointInterval - this.rowsTaken % this.checkpointInterval;
+	}
+
+	/**
+	 * Sets whether files and streams that are opened from now on are written
+	 * asynchronously. In that case, writing a line only formats it and puts it
+	 * into one of a fixed number of chunks of {@link #getBufferSize()} bytes,
+	 * which a dedicated thread writes to the file or stream. If all chunks are
+	 * waiting to be written, writing blocks until one is free again.<br>
+	 * <br>
+	 * Exceptions of the background thread are thrown by the next write, and at
+	 * the latest by '.closeFile()' or '.releaseStream()', which wait until
+	 * everything was written.
+	 * 
+	 * @param asynchronous whether to write in the background
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	/**
+	 * Sets the size of the buffer that lines are collected in before they are
+	 * written. Only affects files and streams that are opened afterwards.
+	 * 
+	 * @param bufferSize the size in bytes, at least 16
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < TableOutput.MIN_BUFFER_SIZE)
+			throw new IllegalArgumentException("Buffer size must be at least " + TableOutput.MIN_BUFFER_SIZE + " bytes");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets how often checkpoints are written for files that are opened with
+	 * {@link #openFile()} (without compression) from now on. A checkpoint is
+	 * written after the header line and after every given number of lines passed
+	 * for writing. It flushes all lines to disk and stores the number of lines
+	 * passed and written, the length of the file and a fingerprint of the headers in a sidecar file named like the file
+	 * with ".checkpoint" appended. After a crash, writing can be continued with
+	 * {@link #resumeFile(StudyOrAssayTableObject)}. The sidecar file is deleted
+	 * by '.closeFile()'. Sorted files, see {@link #setSortColumn(String)}, get no
+	 * checkpoints.
+	 * 
+	 * @param checkpointInterval the number of lines between two checkpoints, or 0
+	 *                           for no checkpoints
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		if (checkpointInterval < 0)
+			throw new IllegalArgumentException("Checkpoint interval cannot be negative");
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Sets how files opened with {@link #openFile()} are compressed from now on.
+	 * With {@link Compression#GZIP}, the lines are compressed by the writing
+	 * thread. With {@link Compression#PARALLEL_GZIP}, blocks of 1 MiB are
+	 * compressed on all processors and written as consecutive gzip members, which
+	 * is worth it when compressing is slower than the disk. The file is written
+	 * under {@link #getFileName()} as it is, so the name should end with ".gz".
+	 * 
+	 * @param compression the compression, {@link Compression#NONE} by default
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = Objects.requireNonNull(compression, "Compression cannot be null");
+	}
+
+	/**
+	 * Sets whether lines that were already written are skipped in outputs that
+	 * are set from now on, e.g. when a study file is derived from assay data and
+	 * the same chain of Source, Process and Sample comes up many times. Every line
+	 * is identified by a 128-bit hash of its content, see {@link Deduplication}
+	 * for how the hashes are remembered. Lines written before the output was set,
+	 * e.g. those of a file that is appended to, are not known, except for those
+	 * of a resumed file, which are read back.<br>
+	 * <br>
+	 * {@link #getRowsWritten()} only counts the lines that were written, while
+	 * checkpoints are due by the number of lines passed for writing, including
+	 * skipped duplicates.
+	 * 
+	 * @param deduplication how duplicates are recognized,
+	 *                      {@link Deduplication#NONE} by default
+	 */
+	public void setDeduplication(Deduplication deduplication) {
+		this.deduplication = Objects.requireNonNull(deduplication, "Deduplication cannot be null");
+	}
+
+	/**
+	 * Sets the memory used to recognize duplicate lines of outputs that are set
+	 * from now on. A hash set takes 16 bytes per slot and grows up to the given
+	 * size, a Bloom filter takes the given size, rounded down to a power of two,
+	 * from the start.
+	 * 
+	 * @param deduplicationMemory the memory in bytes,
+	 *                            {@link Props#DEFAULT_DEDUPLICATION_MEMORY} by
+	 *                            default
+	 */
+	public void setDeduplicationMemory(long deduplicationMemory) {
+		if (deduplicationMemory < 1 << 10)
+			throw new IllegalArgumentException("At least 1024 bytes are needed for deduplication");
+		this.deduplicationMemory = deduplicationMemory;
 	}
 
 	/**
@@ -104,39 +827,120 @@ public abstract class WideTableFile implements Commentable {
 	 */
 	public void setFileName(String fileName) {
 		this.fileName = StringUtil.sanitize(Objects.requireNonNull(fileName, "Filename cannot be null"));
+		this.modified();
+	}
+
+	/**
+	 * Sets the number of threads that format rows in parallel when writing with
+	 * {@link #writeLines(Iterator)}. With one thread, all rows are formatted by the
+	 * calling thread.
+	 * 
+	 * @param formattingThreads the number of threads, at least 1
+	 */
+	public void setFormattingThreads(int formattingThreads) {
+		if (formattingThreads < 1)
+			throw new IllegalArgumentException("At least one thread is needed for formatting");
+		this.formattingThreads = formattingThreads;
+	}
+
+	/**
+	 * Use the given headers from now on. If lines are sorted, the header line must
+	 * have been written already.
+	 */
+	private void setHeaders(ArrayList<LinkedHashMap<String, String[]>> headers, CharSequence headerLine)
+			throws IOException {
+		if (this.sortingOutput != null)
+			this.sortingOutput.sortBy(this.indexOfSortColumn(headers));
+		this.headers = headers;
+		this.headerFingerprint = Checkpoint.fingerprint(headerLine);
+		this.rowPlan = new RowPlan(this, this.headers);
+		this.formatter = this.rowPlan.newFormatter();
+	}
+
+	/**
+	 * Direct the output to a channel, e.g. a {@link java.nio.channels.FileChannel}.
+	 * Lines are collected in a buffer and written to the channel in blocks of
+	 * {@link #getBufferSize()} bytes.
+	 * 
+	 * @param channel the channel to write to
+	 */
+	public void setOutputChannel(WritableByteChannel channel) {
+		this.checkNoOutput();
+		this.setOutput(
+				new BufferedTableOutput(Objects.requireNonNull(channel, "Channel cannot be null"), this.bufferSize));
 	}
 
 	public void setOutputStream(OutputStream os) {
-		if (this.outputstreamwriter != null) {
-			throw new IllegalStateException(
-					"A file or stream is already set. Please unset it first.");
+		this.checkNoOutput();
+		this.setOutput(new BufferedTableOutput(Objects.requireNonNull(os, "Stream cannot be null"), this.bufferSize));
+	}
+
+	private void setOutput(TableOutput output) {
+		this.output = this.asynchronous ? new AsyncTableOutput(output, this.bufferSize) : output;
+		this.sortingOutput = null;
+		if (this.sortColumn != null) {
+			this.sortingOutput = new SortingTableOutput(this.output, this.bufferSize, this.sortMemory);
+			this.output = this.sortingOutput;
 		}
-		this.outputstreamwriter = new OutputStreamWriter(os, Props.DEFAULT_CHARSET);
+		this.rowsTaken = 0;
+		this.rowsWritten = 0;
+		this.rowFilter = this.deduplication == Deduplication.NONE ? null
+				: DuplicateRowFilter.create(this.deduplication, this.deduplicationMemory);
+	}
+
+	/**
+	 * Sets whether the lines of outputs that are set from now on are sorted by
+	 * the value of a column, e.g. "Sample Name", instead of being written in
+	 * order. The header line is written right away, the lines are held back and
+	 * written sorted when the file is closed or the stream released. Up to
+	 * {@link #getSortMemory()} bytes of lines are kept in memory, beyond that the
+	 * lines are sorted in runs that are spilled to temporary files and merged in
+	 * the end, so tables much larger than the heap can be sorted.<br>
+	 * <br>
+	 * Lines are compared by the Unicode code points of the value in the first
+	 * column with that header. Lines with the same value keep the order they were
+	 * written in. When appending to a file, only the new lines are sorted.
+	 * 
+	 * @param sortColumn the header of the column, null to write lines in order,
+	 *                   which is the default
+	 */
+	public void setSortColumn(String sortColumn) {
+		this.sortColumn = sortColumn;
+	}
+
+	/**
+	 * Sets the memory used to sort the lines of outputs that are set from now on,
+	 * see {@link #setSortColumn(String)}.
+	 * 
+	 * @param sortMemory the memory in bytes, {@link Props#DEFAULT_SORT_MEMORY} by
+	 *                   default
+	 */
+	public void setSortMemory(long sortMemory) {
+		if (sortMemory < 1)
+			throw new IllegalArgumentException("Sort memory must be positive");
+		this.sortMemory = sortMemory;
 	}
 
 	public void writeHeadersFromExample(StudyOrAssayTableObject example) throws IOException {
-		if (this.outputstreamwriter == null)
+		if (this.output == null)
 			throw new IllegalStateException("No file or stream open for writing");
 		if (this.hasWrittenHeaders())
 			throw new IllegalStateException("Headers were already written to this file or stream");
 
-		this.headers = new ArrayList<LinkedHashMap<String, String[]>>();
-		StringBuilder sb = new StringBuilder();
-		while (example != null) {
-			LinkedHashMap<String, String[]> headers = example.getHeaders();
-			this.headers.add(headers);
-			sb.append(headers.values().stream().map(o -> String.join(Symbol.TAB.toString(), o))
-					.collect(Collectors.joining(Symbol.TAB.toString())));
-			example = example.getNextStudyOrAssayTableObject();
-			if (example != null)
-				sb.append(Symbol.TAB.toString());
-		}
-
-		logger.debug("{}: Writing these headers to output: [{}]", this, this.headers.stream().map(t -> "{"
+		ArrayList<LinkedHashMap<String, String[]>> headers = this.collectHeaders(example);
+		StringBuilder sb = this.formatHeaderLine(headers);
+		logger.debug("{}: Writing these headers to output: [{}]", this, headers.stream().map(t -> "{"
 				+ t.keySet().stream().map(k -> k + " = " + Arrays.toString(t.get(k))).collect(Collectors.joining(", "))
 				+ "}").collect(Collectors.joining(", ")));
 
-		this.outputstreamwriter.write(sb.toString() + Symbol.ENTER);
+		// Fails before anything is written if there is nothing to sort by
+		if (this.sortingOutput != null)
+			this.indexOfSortColumn(headers);
+		// Sorted lines start after the header line
+		this.output.write(sb);
+		this.setHeaders(headers, sb);
+		if (this.isCheckpointing())
+			this.checkpoint();
 	}
 
 	/**
@@ -154,7 +958,7 @@ public abstract class WideTableFile implements Commentable {
 	 *                     {@link OutputStream} or {@link File}
 	 */
 	public void writeLine(StudyOrAssayTableObject initiator) throws IOException {
-		if (this.outputstreamwriter == null)
+		if (this.output == null)
 			throw new IllegalStateException("No file or stream open for writing");
 
 		// If headers have not been written yet, write them from this row.
@@ -164,50 +968,168 @@ public abstract class WideTableFile implements Commentable {
 			this.writeHeadersFromExample(initiator);
 		}
 
-		StringBuilder sb = new StringBuilder();
-		StudyOrAssayTableObject currentObject = initiator;
-		// Loop through header groups and objects at the same time (see below where
-		// currentObject = currentObject.getNextStudyOrAssayTableObject();
-		// each header group corresponds to one object (Sample, Process ...)
-		// So a header group for a Source could for example look like this:
+		// The header groups were compiled into a plan when the headers were written,
+		// so the row is emitted by walking that plan. Each header group corresponds to
+		// one object (Sample, Process ...), a header group for a Source could for
+		// example look like this:
 		// {
 		// "Source Name" => ["Source Name"],
 		// "Characteristic[Organism]" => ["Characteristic [Organism]", "Term Source
 		// REF", "Term Accession Number"],
 		// "Characteristic[Genotype]" => ["Characteristic [Genotype]"]
 		// }
-		for (LinkedHashMap<String, String[]> currentHeaderGroup : this.headers) {
-			// This happens if we have header groups left but no more currentObjects in the
-			// line
-			Objects.requireNonNull(currentObject,
-					"This line contains fewer objects (Sources, Samples, Processes...) than were defined in the header."
-							+ "\n Please make sure your line structure is uniform (e.g. Sample->Process->Material->Process->DataFile for ALL lines) and everything is linked with Processes correctly.");
-
-			Map<String, String[]> fields = currentObject.getFields();
-
-			sb.append(currentHeaderGroup.keySet().stream().map(o -> {
-				if (currentHeaderGroup.get(o).length != fields.get(o).length)
-					throw new IllegalStateException("Object has "
-							+ (currentHeaderGroup.get(o).length > fields.get(o).length ? "fewer" : "more")
-							+ "columns than header for " + o
-							+ "\n Please make sure that every object contains the same information as the first line (or the examplary objects that were manually passed to writeHeadersFromExample)."
-							+ "This error mostly occurs when only some objects of the same column (e.g. a specific Process ParameterValue) have Term Source Refs and Term Accession numbers.");
-				String partOfLine = String.join(Symbol.TAB.toString(), fields.get(o));
-				// Now we delete the entry from fields so that we know when there's any left in
-				// the end, we are missing headers
-				fields.remove(o);
-				return partOfLine;
-			}).collect(Collectors.joining(Symbol.TAB.toString())));
-
-			if (fields.size() > 0)
-				logger.warn(
-						"{}: There were fields for Object {} that had no corresponding header. They were ignored: {}",
-						this, currentObject, String.join(", ", fields.keySet()));
-
-			currentObject = currentObject.getNextStudyOrAssayTableObject();
-			if (currentObject != null)
-				sb.append(Symbol.TAB.toString());
+		StringBuilder sb = this.rowBuilder;
+		sb.setLength(0);
+		this.formatter.format(initiator, sb);
+		sb.append(Symbol.ENTER.toString());
+		if (this.rowFilter != null && !this.rowFilter.add(sb)) {
+			this.countRows(1, 0);
+			return;
+		}
+		this.output.write(sb);
+		this.countRows(1, 1);
+	}
+
+	/**
+	 * Write a line from a {@link RowTemplate}, with the current values of its
+	 * slots.
+	 * 
+	 * @param template the template created for this file
+	 * @throws IOException if unable to write the line into the
+	 *                     {@link OutputStream} or {@link File}
+	 */
+	public void writeLine(RowTemplate template) throws IOException {
+		if (this.output == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		if (template.getFile() != this || template.getPlan() != this.rowPlan)
+			throw new IllegalStateException("The template was not created for the current headers of this file");
+		if (this.rowFilter != null && !this.rowFilter.add(template)) {
+			this.countRows(1, 0);
+			return;
+		}
+		template.writeTo(this.output);
+		this.countRows(1, 1);
+	}
+
+	/**
+	 * Write many lines for a {@link Study} or {@link Assay}. The output is the
+	 * same as calling {@link #writeLine(StudyOrAssayTableObject)} for every
+	 * initiator, but the lines are formatted in parallel by
+	 * {@link #getFormattingThreads()} threads while the calling thread writes them
+	 * in their original order. If a line cannot be written, all lines before it
+	 * are written and the exception writeLine would have thrown is thrown.<br>
+	 * <br>
+	 * The objects of the lines must not be modified while they are written.
+	 * 
+	 * @param initiators the first objects of the lines
+	 * @throws IOException if unable to write the lines into the
+	 *                     {@link OutputStream} or {@link File}
+	 */
+	public void writeLines(Iterator<? extends StudyOrAssayTableObject> initiators) throws IOException {
+		if (this.output == null)
+			throw new IllegalStateException("No file or stream open for writing");
+
+		// The first line also writes the headers if necessary
+		if (initiators.hasNext() && (this.headers == null || this.formattingThreads == 1))
+			this.writeLine(initiators.next());
+		if (this.formattingThreads == 1) {
+			while (initiators.hasNext())
+				this.writeLine(initiators.next());
+		} else if (initiators.hasNext()) {
+			RowPipeline pipeline = new RowPipeline(this.rowPlan, this.formattingThreads, this.rowFilter);
+			try {
+				// Lines are written in segments that end where a checkpoint is due, all on
+				// the same workers
+				while (initiators.hasNext()) {
+					long limit = this.segmentLimit();
+					long[] taken = { 0 };
+					Iterator<StudyOrAssayTableObject> segment = new Iterator<StudyOrAssayTableObject>() {
+						public boolean hasNext() {
+							return taken[0] < limit && initiators.hasNext();
+						}
+
+						public StudyOrAssayTableObject next() {
+							taken[0]++;
+							return initiators.next();
+						}
+					};
+					long lines = -1;
+					try {
+						lines = pipeline.write(segment, this.output);
+					} finally {
+						// Some of the lines may have been written
+						if (lines < 0) {
+							this.rowsTaken = -1;
+							this.rowsWritten = -1;
+						}
+					}
+					this.countRows(taken[0], lines);
+				}
+			} finally {
+				pipeline.close();
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #writeLines(Iterator)}, for initiators that are already held in
+	 * memory. The list is split into chunks that are formatted and encoded in a
+	 * {@link java.util.concurrent.ForkJoinPool} of {@link #getFormattingThreads()}
+	 * threads and written in the order of the list, so the output is byte-identical
+	 * to calling {@link #writeLine(StudyOrAssayTableObject)} for every element.
+	 * If no headers were written yet, they are derived from the first element.
+	 * 
+	 * @param initiators the first objects of the lines
+	 * @throws IOException if unable to write the lines into the
+	 *                     {@link OutputStream} or {@link File}
+	 */
+	public void writeLines(List<? extends StudyOrAssayTableObject> initiators) throws IOException {
+		if (this.output == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		if (initiators.isEmpty())
+			return;
+
+		if (this.headers == null)
+			this.writeHeadersFromExample(initiators.get(0));
+		if (this.formattingThreads == 1) {
+			for (StudyOrAssayTableObject initiator : initiators)
+				this.writeLine(initiator);
+		} else {
+			RowPipeline pipeline = new RowPipeline(this.rowPlan, this.formattingThreads, this.rowFilter);
+			try {
+				// Lines are written in segments that end where a checkpoint is due, all on
+				// the same workers
+				for (int start = 0; start < initiators.size();) {
+					int end = (int) Math.min(initiators.size(), start + this.segmentLimit());
+					List<? extends StudyOrAssayTableObject> segment = initiators.subList(start, end);
+					long lines = -1;
+					try {
+						lines = pipeline.write(segment, this.output);
+					} finally {
+						// Some of the lines may have been written
+						if (lines < 0) {
+							this.rowsTaken = -1;
+							this.rowsWritten = -1;
+						}
+					}
+					this.countRows(end - start, lines);
+					start = end;
+				}
+			} finally {
+				pipeline.close();
+			}
 		}
-		this.outputstreamwriter.write(sb.toString() + Symbol.ENTER);
+	}
+
+	/**
+	 * Like {@link #writeLines(Iterator)}, for the initiators of a {@link Stream}.
+	 * The stream is consumed in order by the calling thread.
+	 * 
+	 * @param initiators the first objects of the lines
+	 * @throws IOException if unable to write the lines into the
+	 *                     {@link OutputStream} or {@link File}
+	 */
+	public void writeLines(Stream<? extends StudyOrAssayTableObject> initiators) throws IOException {
+		this.writeLines(initiators.iterator());
 	}
 }
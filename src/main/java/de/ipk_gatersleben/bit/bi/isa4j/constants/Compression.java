@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.ipk_gatersleben.bit.bi.isa4j.util.ParallelGzipOutputStream;
+
+/**
+ * Compression of the files written by the isa4J API
+ */
+public enum Compression {
+
+	/**
+	 * Files are written as they are
+	 */
+	NONE,
+
+	/**
+	 * Files are gzip compressed on the writing thread
+	 */
+	GZIP,
+
+	/**
+	 * Files are gzip compressed in independent blocks on all processors, see
+	 * {@link ParallelGzipOutputStream}
+	 */
+	PARALLEL_GZIP;
+
+	/**
+	 * Wrap a stream so that everything written to it is compressed. Closing the
+	 * returned stream finishes the compressed data and closes the given stream.
+	 *
+	 * @param os         the stream to write the compressed data to
+	 * @param bufferSize the size in bytes of the blocks written to the stream
+	 * @return the compressing stream, or the given stream for {@link #NONE}
+	 * @throws IOException if the gzip header can't be written
+	 */
+	public OutputStream wrap(OutputStream os, int bufferSize) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPOutputStream(os, bufferSize);
+		case PARALLEL_GZIP:
+			return new ParallelGzipOutputStream(os);
+		default:
+			return os;
+		}
+	}
+
+}
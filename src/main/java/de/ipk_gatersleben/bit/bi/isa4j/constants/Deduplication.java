@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.constants;
+
+/**
+ * How lines that were already written to a Study or Assay file are recognized
+ * and skipped. Every line is identified by a 128-bit hash of its content.
+ */
+public enum Deduplication {
+
+	/**
+	 * All lines are written
+	 */
+	NONE,
+
+	/**
+	 * The hashes of the written lines are kept in a hash set. Lines are only
+	 * skipped if they were written before. Once the set has used up its memory,
+	 * it stops taking new lines, which are then always written.
+	 */
+	HASH_SET,
+
+	/**
+	 * The written lines are recorded in a Bloom filter of a fixed size, which
+	 * takes about 10 bits per line for a false positive rate of 1%. A line that
+	 * was not written before is skipped with that probability, so this is meant
+	 * for billions of lines that don't fit into a hash set, where losing a few
+	 * lines is acceptable.
+	 */
+	BLOOM_FILTER;
+
+}
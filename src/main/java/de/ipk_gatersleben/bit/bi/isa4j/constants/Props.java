@@ -17,6 +17,22 @@ import java.nio.charset.StandardCharsets;
  */
 public class Props {
 
+	/**
+	 * Size in bytes of the buffer used to write Study and Assay files
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Memory in bytes used to recognize duplicate lines of a Study or Assay file
+	 */
+	public static final long DEFAULT_DEDUPLICATION_MEMORY = 1 << 28;
+
+	/**
+	 * Memory in bytes used to sort the lines of a Study or Assay file before they
+	 * are spilled to temporary files
+	 */
+	public static final long DEFAULT_SORT_MEMORY = 1 << 26;
+
 	public static final Charset DEFAULT_CHARSET= StandardCharsets.UTF_8;
 	
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes gzip compressed data, compressing on several threads. The data is cut
+ * into blocks of {@link #BLOCK_SIZE} bytes, every block is compressed on its
+ * own into a complete gzip member and the members are written in order. A file
+ * of concatenated members is a valid gzip file (RFC 1952), which gunzip, zcat
+ * and {@link java.util.zip.GZIPInputStream} read as a whole. Since blocks
+ * don't share their dictionaries, the result is slightly larger than with a
+ * single {@link GZIPOutputStream}.<br>
+ * <br>
+ * Every {@link #flush()} ends the current block. Not thread-safe.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * Size in bytes of the blocks that are compressed independently
+	 */
+	public static final int BLOCK_SIZE = 1 << 20;
+
+	private static byte[] compress(byte[] block, int length) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 1 << 16)) {
+			gzip.write(block, 0, length);
+		}
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * The block that is filled right now
+	 */
+	private byte[] block = new byte[BLOCK_SIZE];
+
+	private boolean closed = false;
+
+	private final ExecutorService compressors;
+
+	/**
+	 * Number of bytes in the current block
+	 */
+	private int count = 0;
+
+	/**
+	 * Blocks that were compressed and can be filled again
+	 */
+	private final Queue<byte[]> free = new ConcurrentLinkedQueue<byte[]>();
+
+	/**
+	 * Number of blocks that can be compressed or wait to be written before
+	 * writing blocks
+	 */
+	private final int maxPending;
+
+	/**
+	 * Number of gzip members written so far
+	 */
+	private long members = 0;
+
+	private final OutputStream out;
+
+	/**
+	 * The compressed blocks, in order
+	 */
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	/**
+	 * Compress on as many threads as there are processors
+	 *
+	 * @param out the stream to write the compressed data to
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param out     the stream to write the compressed data to
+	 * @param threads the number of threads compressing blocks, at least 1
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed for compressing");
+		this.out = Objects.requireNonNull(out, "Stream cannot be null");
+		this.maxPending = 2 * threads;
+		this.compressors = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "isa4j-gzip");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private void checkOpen() throws IOException {
+		if (this.closed)
+			throw new IOException("Stream closed");
+	}
+
+	/**
+	 * Writes the remaining data, stops the compressing threads and closes the
+	 * underlying stream. If nothing was written at all, an empty gzip member is
+	 * written so that the result is still a valid gzip file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed)
+			return;
+		try {
+			this.finishBlocks();
+			if (this.members == 0)
+				this.out.write(compress(this.block, 0));
+		} finally {
+			this.closed = true;
+			this.compressors.shutdownNow();
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Submit the current block and write all compressed blocks
+	 */
+	private void finishBlocks() throws IOException {
+		this.submitBlock();
+		while (!this.pending.isEmpty())
+			this.writeMember();
+	}
+
+	/**
+	 * Compresses and writes everything written so far and flushes the underlying
+	 * stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.checkOpen();
+		this.finishBlocks();
+		this.out.flush();
+	}
+
+	/**
+	 * Hand the current block to the compressing threads and continue with a free
+	 * one. Writes compressed blocks as long as too many are pending.
+	 */
+	private void submitBlock() throws IOException {
+		if (this.count == 0)
+			return;
+		byte[] block = this.block;
+		int length = this.count;
+		this.pending.add(this.compressors.submit(() -> {
+			byte[] compressed = compress(block, length);
+			this.free.add(block);
+			return compressed;
+		}));
+		byte[] next = this.free.poll();
+		this.block = next == null ? new byte[BLOCK_SIZE] : next;
+		this.count = 0;
+		while (this.pending.size() > this.maxPending)
+			this.writeMember();
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		this.checkOpen();
+		while (length > 0) {
+			int part = Math.min(length, BLOCK_SIZE - this.count);
+			System.arraycopy(bytes, offset, this.block, this.count, part);
+			this.count += part;
+			offset += part;
+			length -= part;
+			if (this.count == BLOCK_SIZE)
+				this.submitBlock();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.checkOpen();
+		this.block[this.count++] = (byte) b;
+		if (this.count == BLOCK_SIZE)
+			this.submitBlock();
+	}
+
+	/**
+	 * Wait for the oldest pending block and write it
+	 */
+	private void writeMember() throws IOException {
+		byte[] compressed;
+		try {
+			compressed = this.pending.peek().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a block to be compressed");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Compressing a block failed", e.getCause());
+		}
+		this.pending.poll();
+		this.out.write(compressed);
+		this.members++;
+	}
+
+}
@@ -7,6 +7,8 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.util;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 
 /**
@@ -16,10 +18,34 @@ import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
  *
  */
 public class StringUtil {
+
+	private static final String LINE_SEPARATOR = Symbol.ENTER.toString();
+
+	/**
+	 * Maximum number of names cached per attribute, the cache of an attribute is
+	 * cleared when it is full
+	 */
+	private static final int MAX_CACHED_NAMES = 4096;
+
+	/**
+	 * Attribute -> name -> attribute with the name put in
+	 */
+	private static final ConcurrentHashMap<Object, ConcurrentHashMap<String, String>> names = new ConcurrentHashMap<Object, ConcurrentHashMap<String, String>>();
+
+	private static final char REPLACEMENT = Symbol.SPACE.toString().charAt(0);
+
+	private static final char TAB = Symbol.TAB.toString().charAt(0);
+
 	/**
 	 * In constants, the position of ? is the parameter to put in. So we need the
 	 * index of ? this function is used only by writeToFile, get the index of ? and
 	 * use by replace of {@link StringBuilder}.
+	 * 
+	 * For attributes that are constants of an enum, the result is cached, so the
+	 * same canonical String is returned for the same attribute and name, e.g.
+	 * every time "Characteristics[Organism]" is needed. Comparing such keys or
+	 * looking them up in a map is then mostly an identity check and uses the hash
+	 * code that the String already computed.
 	 *
 	 * @param <T>       the attribute type
 	 * @param attribute the attribute to add
@@ -27,23 +53,92 @@ public class StringUtil {
 	 * @return the type
 	 */
 	public static <T> String putNameInAttribute(T attribute, String parameter) {
-		return attribute.toString().replace(Symbol.WILDCARD.toString(), parameter);
+		// Other attributes might not always return the same from toString()
+		if (!(attribute instanceof Enum) || parameter == null)
+			return attribute.toString().replace(Symbol.WILDCARD.toString(), parameter);
+
+		ConcurrentHashMap<String, String> attributeNames = names.get(attribute);
+		if (attributeNames == null)
+			attributeNames = names.computeIfAbsent(attribute, a -> new ConcurrentHashMap<String, String>());
+		String name = attributeNames.get(parameter);
+		if (name == null) {
+			if (attributeNames.size() >= MAX_CACHED_NAMES)
+				attributeNames.clear();
+			name = attributeNames.computeIfAbsent(parameter,
+					p -> attribute.toString().replace(Symbol.WILDCARD.toString(), p));
+		}
+		return name;
+	}
+
+	/**
+	 * Checks if a key equals the result of
+	 * {@link #putNameInAttribute(Object, String)} for the given attribute and
+	 * name, without building that String.
+	 *
+	 * @param <T>       the attribute type
+	 * @param key       the key to check
+	 * @param attribute the attribute containing the wildcard
+	 * @param parameter the name that would be put in the attribute
+	 * @return true if the key matches
+	 */
+	public static <T> boolean isNameInAttribute(String key, T attribute, String parameter) {
+		String template = attribute.toString();
+		int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+		if (wildcard < 0)
+			return key.equals(template);
+		int suffixLength = template.length() - wildcard - 1;
+		return key.length() == wildcard + parameter.length() + suffixLength
+				&& key.regionMatches(0, template, 0, wildcard)
+				&& key.regionMatches(wildcard, parameter, 0, parameter.length())
+				&& key.regionMatches(wildcard + parameter.length(), template, wildcard + 1, suffixLength);
 	}
 
 	/**
 	 * Removes Symbol.TABs and Symbol.ENTERs from an input String and replaces them
-	 * with Symbol.EMPTY. To be used on any String input by the user that ends up in
+	 * with Symbol.SPACE. To be used on any String input by the user that ends up in
 	 * the ISATab files.
 	 * 
+	 * The input is scanned once and returned as it is if there is nothing to
+	 * replace, which is the case for almost all values. Otherwise it is copied
+	 * once, replacing as it goes.
+	 * 
 	 * @param input the input {@link String}
 	 * @return the cleanded {@link String}
 	 */
 	public static String sanitize(String input) {
-		if (input == null) {
+		if (input == null)
 			return null;
-		} else {
-			return input.replaceAll(Symbol.TAB.toString(), Symbol.SPACE.toString()).replaceAll(Symbol.ENTER.toString(),
-					Symbol.SPACE.toString());
+		char separatorStart = LINE_SEPARATOR.charAt(0);
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (c == TAB || (c == separatorStart && input.startsWith(LINE_SEPARATOR, i)))
+				return sanitize(input, i);
+		}
+		return input;
+	}
+
+	/**
+	 * Copy the input, replacing TABs and line separators from the given index on
+	 * 
+	 * @param input the input {@link String}
+	 * @param from  index of the first character that needs to be replaced
+	 * @return the cleaned {@link String}
+	 */
+	private static String sanitize(String input, int from) {
+		StringBuilder sb = new StringBuilder(input.length());
+		sb.append(input, 0, from);
+		char separatorStart = LINE_SEPARATOR.charAt(0);
+		for (int i = from; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (c == TAB) {
+				sb.append(REPLACEMENT);
+			} else if (c == separatorStart && input.startsWith(LINE_SEPARATOR, i)) {
+				sb.append(REPLACEMENT);
+				i += LINE_SEPARATOR.length() - 1;
+			} else {
+				sb.append(c);
+			}
 		}
+		return sb.toString();
 	}
 }
\ No newline at end of file
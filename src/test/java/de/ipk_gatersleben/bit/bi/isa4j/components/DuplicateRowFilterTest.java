@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Deduplication;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+public class DuplicateRowFilterTest {
+
+	private static long[] hash(byte[] bytes) {
+		RowHash hash = new RowHash();
+		hash.reset();
+		hash.update(bytes, 0, bytes.length);
+		return hash.finish();
+	}
+
+	private static long[] hash(String chars) {
+		RowHash hash = new RowHash();
+		hash.reset();
+		hash.update(chars, 0, chars.length());
+		return hash.finish();
+	}
+
+	@Test
+	void testBloomFilter() {
+		DuplicateRowFilter filter = DuplicateRowFilter.create(Deduplication.BLOOM_FILTER, 100000);
+		assertEquals(1 << 16, filter.memoryUsed());
+		int skipped = 0;
+		for (int i = 0; i < 50000; i++)
+			if (!filter.add("Line " + i + "\n"))
+				skipped++;
+		// About 10 bits per line give a false positive rate of about 1%
+		assertTrue(skipped < 1000, skipped + " new lines were skipped");
+		for (int i = 0; i < 50000; i++)
+			assertFalse(filter.add("Line " + i + "\n"));
+		assertEquals(50000 + skipped, filter.getDuplicates());
+	}
+
+	@Test
+	void testHashSet() {
+		DuplicateRowFilter filter = DuplicateRowFilter.create(Deduplication.HASH_SET, 1 << 20);
+		for (int i = 0; i < 40000; i++)
+			assertTrue(filter.add("Line " + i + "\n"));
+		assertEquals(1 << 20, filter.memoryUsed());
+		for (int i = 0; i < 40000; i++)
+			assertFalse(filter.add("Line " + i + "\n"));
+		assertEquals(40000, filter.getDuplicates());
+
+		// Once the memory is used up, new lines are always written
+		for (int i = 40000; i < 60000; i++)
+			assertTrue(filter.add("Line " + i + "\n"));
+		assertTrue(filter.add("Line 59999\n"));
+		assertFalse(filter.add("Line 0\n"));
+		assertEquals(1 << 20, filter.memoryUsed());
+	}
+
+	@Test
+	void testRowHash() {
+		// Reference value of MurmurHash3_x64_128 with seed 0
+		assertArrayEquals(new long[] { 0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L },
+				hash("The quick brown fox jumps over the lazy dog"));
+		assertArrayEquals(new long[] { 0, 0 }, hash(""));
+
+		// Characters hash like their encoding
+		String line = "Sample \u00e4\ud83c\udf31\u20ac\tx\ud800\n";
+		assertArrayEquals(hash(line.getBytes(Props.DEFAULT_CHARSET)), hash(line));
+		RowHash hash = new RowHash();
+		hash.reset();
+		hash.update(line, 0, line.length());
+		assertEquals(line.getBytes(Props.DEFAULT_CHARSET).length, hash.length());
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class FanOutWriterTest {
+
+	private static final Protocol imaging = new Protocol("Imaging");
+
+	private static final Protocol sequencing = new Protocol("Sequencing");
+
+	private static Sample imagingRow(int i) {
+		Sample sample = new Sample("Sample " + i);
+		Process process = new Process(imaging);
+		process.setInput(sample);
+		process.setOutput(new DataFile("Raw Data File", "images/" + i + ".png"));
+		return sample;
+	}
+
+	private static Sample sequencingRow(int i) {
+		// Not every sample was sequenced
+		if (i % 3 == 0)
+			return null;
+		Sample sample = new Sample("Sample " + i);
+		Process process = new Process(sequencing);
+		process.setInput(sample);
+		process.setOutput(new DataFile("Raw Data File", "reads/" + i + ".fastq"));
+		return sample;
+	}
+
+	@Test
+	void testWrite() throws IOException {
+		Assay imagingAssay = new Assay("a_imaging.txt");
+		Assay sequencingAssay = new Assay("a_sequencing.txt");
+
+		ByteArrayOutputStream expectedImaging = new ByteArrayOutputStream();
+		ByteArrayOutputStream expectedSequencing = new ByteArrayOutputStream();
+		imagingAssay.setOutputStream(expectedImaging);
+		sequencingAssay.setOutputStream(expectedSequencing);
+		for (int i = 0; i < 2000; i++) {
+			imagingAssay.writeLine(imagingRow(i));
+			if (sequencingRow(i) != null)
+				sequencingAssay.writeLine(sequencingRow(i));
+		}
+		imagingAssay.releaseStream();
+		sequencingAssay.releaseStream();
+
+		FanOutWriter<Integer> writer = new FanOutWriter<Integer>();
+		assertThrows(IllegalStateException.class, () -> writer.write(IntStream.range(0, 10).boxed()));
+		writer.add(imagingAssay, FanOutWriterTest::imagingRow);
+		writer.add(sequencingAssay, FanOutWriterTest::sequencingRow);
+		assertThrows(IllegalArgumentException.class, () -> writer.add(imagingAssay, FanOutWriterTest::imagingRow));
+
+		ByteArrayOutputStream imagingOutput = new ByteArrayOutputStream();
+		ByteArrayOutputStream sequencingOutput = new ByteArrayOutputStream();
+		imagingAssay.setOutputStream(imagingOutput);
+		sequencingAssay.setOutputStream(sequencingOutput);
+		writer.write(IntStream.range(0, 2000).boxed());
+		imagingAssay.releaseStream();
+		sequencingAssay.releaseStream();
+
+		assertEquals(expectedImaging.toString(), imagingOutput.toString());
+		assertEquals(expectedSequencing.toString(), sequencingOutput.toString());
+	}
+
+	@Test
+	void testWriteFailure() throws IOException {
+		Assay imagingAssay = new Assay("a_imaging.txt");
+		Assay brokenAssay = new Assay("a_broken.txt");
+
+		FanOutWriter<Integer> writer = new FanOutWriter<Integer>();
+		writer.add(imagingAssay, FanOutWriterTest::imagingRow);
+		writer.add(brokenAssay, i -> {
+			if (i == 1000)
+				throw new IllegalArgumentException("Broken record");
+			return sequencingRow(i);
+		});
+
+		imagingAssay.setOutputStream(new ByteArrayOutputStream());
+		brokenAssay.setOutputStream(new ByteArrayOutputStream());
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> writer.write(IntStream.range(0, 100000).boxed()));
+		assertEquals("Broken record", e.getMessage());
+		imagingAssay.releaseStream();
+		brokenAssay.releaseStream();
+
+		// A file that is not open fails in its thread and is reported the same way
+		assertThrows(IllegalStateException.class, () -> writer.write(IntStream.range(0, 10).boxed()));
+	}
+
+}
@@ -16,10 +16,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
@@ -28,6 +31,7 @@ import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import de.ipk_gatersleben.bit.bi.isa4j.components.Assay;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Comment;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Factor;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Investigation;
@@ -35,6 +39,7 @@ import de.ipk_gatersleben.bit.bi.isa4j.components.Ontology;
 import de.ipk_gatersleben.bit.bi.isa4j.components.OntologyAnnotation;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Person;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Protocol;
+import de.ipk_gatersleben.bit.bi.isa4j.components.ProtocolComponent;
 import de.ipk_gatersleben.bit.bi.isa4j.components.ProtocolParameter;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Publication;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Study;
@@ -162,6 +167,18 @@ public class InvestigationTest {
     		+	lineName2 + Symbol.EMPTY + Symbol.TAB + Symbol.EMPTY + Symbol.TAB + "Accession 3" + Symbol.TAB + Symbol.EMPTY + Symbol.ENTER
     		+	lineName3 + Symbol.EMPTY + Symbol.TAB + Symbol.EMPTY + Symbol.TAB + Symbol.EMPTY + Symbol.TAB + "Ontology1" + Symbol.ENTER,
     			result);
+
+    	// The lines are streamed, so the annotation of each publication is retrieved
+    	// once per line, not three times per cell
+    	List<Publication> retrieved = new ArrayList<Publication>();
+    	assertEquals(result, Investigation.ontologyLinesFromList("PubStatus", publications, p -> {
+    		retrieved.add(p);
+    		return p.getStatus();
+    	}));
+    	List<Publication> expected = new ArrayList<Publication>(publications);
+    	expected.addAll(publications);
+    	expected.addAll(publications);
+    	assertEquals(expected, retrieved);
     }
     
     @Test
@@ -206,6 +223,27 @@ public class InvestigationTest {
 	   	  + StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, "Another Comment") + Symbol.TAB + Symbol.EMPTY + Symbol.TAB + "bye bye!" + Symbol.ENTER,
 	   	  Investigation.formatComments(people));   	
     }
+
+    @Test
+    void testFormatSparseComments() {
+    	Person person1 = new Person("LN", "FN", null, null, null);
+    	person1.comments().add(new Comment("First", "a"));
+    	Person person2 = new Person("LN2", "FN2", null, null, null);
+    	Person person3 = new Person("LN3", "FN3", null, null, null);
+    	person3.comments().add(new Comment("Second", "b"));
+    	person3.comments().add(new Comment("First", null));
+    	// Renaming a comment doesn't check that its type is unique, several comments
+    	// of the same type in one cell are joined by semicolons
+    	Comment renamed = new Comment("Third", "c");
+    	person3.comments().add(renamed);
+    	renamed.setName("Second");
+
+    	assertEquals(
+    		StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, "First") + Symbol.TAB + "a" + Symbol.TAB + Symbol.TAB + "null" + Symbol.ENTER
+    	  + StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, "Second") + Symbol.TAB + Symbol.TAB + Symbol.TAB + "b;c" + Symbol.ENTER,
+    	  Investigation.formatComments(List.of(person1, person2, person3)));
+    	assertEquals("", Investigation.formatComments(List.of(person2)));
+    }
     
     @Test
     void testWriteToStream() throws IOException {
@@ -303,4 +341,182 @@ public class InvestigationTest {
     	ourFile.close();
     	
     }
+
+    @Test
+    void testWriteToStreamBlocks() throws IOException {
+    	// Several objects in every block, with sparse comments, roles and annotations. The expected
+    	// file was written before the sections were streamed and has to stay byte-identical.
+    	Ontology ontology = new Ontology("OBI", new URL("http://purl.obolibrary.org/obo/obi.owl"), "2020-08-24", "Ontology for Biomedical Investigations");
+    	Ontology credit = new Ontology("CRediT", new URL("http://purl.org/credit/ontology#"), null, null);
+    	this.investigation.addOntology(ontology);
+    	this.investigation.addOntology(credit);
+    	this.investigation.setTitle("Gew\u00e4chshausversuch");
+    	this.investigation.setSubmissionDate(LocalDate.of(2021, Month.MARCH, 1));
+    	this.investigation.comments().add(new Comment("MIAPPE version", "1.1"));
+    	this.investigation.comments().add(new Comment("License", "CC BY 4.0"));
+    	for (int i = 0; i < 4; i++) {
+    		Person person = new Person("Last " + i, "First " + i, i == 1 ? null : "person" + i + "@example.org", "Affiliation", null);
+    		person.addRole(new OntologyAnnotation("Role " + i, "CREDIT_" + i, credit));
+    		if (i % 2 == 0)
+    			person.addRole(new OntologyAnnotation("Second role", null, null));
+    		if (i != 1)
+    			person.comments().add(new Comment("Person ID", "ORCID " + i));
+    		if (i == 3)
+    			person.comments().add(new Comment("Person Note", "Note"));
+    		this.investigation.addContact(person);
+    		this.investigation.addPublication(new Publication("Title " + i, "Author " + i, "DOI " + i, i == 2 ? null : "PM" + i,
+    				i == 0 ? null : new OntologyAnnotation("published", "STATUS_" + i, ontology)));
+    	}
+    	for (int s = 0; s < 2; s++) {
+    		Study study = new Study("Study " + s, "s_study" + s + ".txt");
+    		study.setTitle("Study \u00e4 " + s);
+    		study.setDescription("Description " + s);
+    		OntologyAnnotation design = new OntologyAnnotation("Design " + s, null, ontology);
+    		design.comments().add(new Comment("Observation Unit Level Hierarchy", "block>plot"));
+    		study.addDesignDescriptor(design);
+    		study.addFactor(new Factor("Factor " + s, new OntologyAnnotation("Type", "TYPE_1", ontology)));
+    		study.addFactor(new Factor("Watering"));
+    		for (int p = 0; p < 3; p++) {
+    			Protocol protocol = new Protocol("Protocol " + s + "." + p,
+    					p == 1 ? null : new OntologyAnnotation("Type " + p, "PROTOCOL_" + p, ontology));
+    			protocol.setDescription("Description " + p);
+    			protocol.addParameter(new ProtocolParameter("Parameter " + p));
+    			if (p > 0)
+    				protocol.addParameter(new ProtocolParameter(new OntologyAnnotation("Volume", "UO_1", ontology)));
+    			if (p == 2)
+    				protocol.addComponent(new ProtocolComponent("Camera", new OntologyAnnotation("Device")));
+    			protocol.comments().add(new Comment("Protocol Note", "Note " + p));
+    			study.addProtocol(protocol);
+    		}
+    		Assay assay = new Assay("a_assay" + s + ".txt");
+    		assay.setTechnologyPlatform("Platform");
+    		assay.comments().add(new Comment("Assay Note", "Note"));
+    		study.addAssay(assay);
+    		study.addContact(this.investigation.getContacts().get(s));
+    		study.addPublication(new Publication("Study publication " + s, "Author"));
+    		study.comments().add(new Comment("Study Country", "Germany"));
+    		this.investigation.addStudy(study);
+    	}
+
+    	ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    	try (InputStream is = this.getClass().getResourceAsStream("i_investigation_blocks.txt")) {
+    		is.transferTo(expected);
+    	}
+    	ByteArrayOutputStream os = new ByteArrayOutputStream();
+    	this.investigation.writeToStream(os);
+    	assertEquals(expected.toString(StandardCharsets.UTF_8), os.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testParallelWriteToStream() throws IOException, InterruptedException {
+    	for (int i = 0; i < 50; i++) {
+    		Study study = new Study("Study " + i);
+    		study.setTitle("Field trial \u00e4 " + i);
+    		study.comments().add(new Comment("Season", "Season " + (i % 4)));
+    		Person person = new Person("LN" + i, "FN" + i, null, null, null);
+    		person.addRole(new OntologyAnnotation("Role " + i));
+    		study.addContact(person);
+    		Protocol protocol = new Protocol("Protocol " + i);
+    		protocol.addParameter(new ProtocolParameter("Parameter " + i));
+    		study.addProtocol(protocol);
+    		this.investigation.addStudy(study);
+    	}
+    	ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    	this.investigation.writeToStream(sequential);
+
+    	// The study blocks should be written in their order, byte by byte the same
+    	this.investigation.setFormattingThreads(4);
+    	ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    	this.investigation.writeToStream(parallel);
+    	assertEquals(sequential.toString("UTF-8"), parallel.toString("UTF-8"));
+
+    	// No worker is left running after a failure
+    	IOException e = assertThrows(IOException.class, () -> this.investigation.writeToStream(new OutputStream() {
+    		@Override
+    		public void write(int b) throws IOException {
+    			throw new IOException("Broken stream");
+    		}
+    	}));
+    	assertEquals("Broken stream", e.getMessage());
+    	// A terminated pool may still have workers on their way out, give them time
+    	for (Thread thread : Thread.getAllStackTraces().keySet())
+    		if (thread.getName().startsWith("ForkJoinPool-"))
+    			thread.join(10000);
+    	assertTrue(Thread.getAllStackTraces().keySet().stream().noneMatch(t -> t.getName().startsWith("ForkJoinPool-")));
+
+    	assertThrows(IllegalArgumentException.class, () -> this.investigation.setFormattingThreads(0));
+    }
+
+    private String write() throws IOException {
+    	ByteArrayOutputStream os = new ByteArrayOutputStream();
+    	this.investigation.writeToStream(os);
+    	return os.toString("UTF-8");
+    }
+
+    @Test
+    void testIncrementalWriteToStream() throws IOException {
+    	Ontology ontology = new Ontology("Ontology", new URL("https://example.org/ontology"), null, null);
+    	this.investigation.addOntology(ontology);
+    	// Single-column comments are sorted in place when written
+    	this.investigation.comments().add(new Comment("Zeta", "z"));
+    	this.investigation.comments().add(new Comment("Alpha", "a"));
+    	List<Study> studies = new ArrayList<>();
+    	for (int i = 0; i < 3; i++) {
+    		Study study = new Study("Study " + i);
+    		study.comments().add(new Comment("Season", "Season " + i));
+    		Person person = new Person("LN" + i, "FN" + i, null, null, null);
+    		person.addRole(new OntologyAnnotation("Role " + i, "R" + i, ontology));
+    		study.addContact(person);
+    		this.investigation.addStudy(study);
+    		studies.add(study);
+    	}
+    	assertFalse(this.investigation.isIncrementalWriting());
+    	this.investigation.setIncrementalWriting(true);
+    	assertTrue(this.investigation.isIncrementalWriting());
+
+    	// The first write renders every section, the next one none
+    	String output = this.write();
+    	assertEquals(4 + 3 * 6, this.investigation.getSectionsRendered());
+    	assertEquals(output, this.write());
+    	assertEquals(0, this.investigation.getSectionsRendered());
+
+    	// A setter changes one section
+    	studies.get(1).getContacts().get(0).setEmail("fn1@example.org");
+    	assertTrue(this.write().contains("fn1@example.org"));
+    	assertEquals(1, this.investigation.getSectionsRendered());
+
+    	// Changes through the lists returned by the getters and to comments
+    	studies.get(2).getContacts().add(new Person("LN", "FN", null, null, null));
+    	studies.get(0).comments().getAll().get(0).setValue("Winter");
+    	assertTrue(this.write().contains("Winter"));
+    	assertEquals(2, this.investigation.getSectionsRendered());
+
+    	// The ontology is shown in its own section and by the roles of every study
+    	ontology.setName("Renamed");
+    	assertTrue(this.write().contains("Renamed"));
+    	assertEquals(1 + 3, this.investigation.getSectionsRendered());
+
+    	// Any change of the ontology renders the sections that show it again
+    	ontology.setVersion("2.0");
+    	assertTrue(this.write().contains(InvestigationAttribute.TERM_SOURCE_VERSION + "\t2.0\n"));
+    	assertEquals(1 + 3, this.investigation.getSectionsRendered());
+
+    	// Removing a study leaves the other sections as they are
+    	this.investigation.getStudies().remove(0);
+    	output = this.write();
+    	assertFalse(output.contains("Winter"));
+    	assertEquals(0, this.investigation.getSectionsRendered());
+
+    	// The spliced output is the same as a full write
+    	this.investigation.setIncrementalWriting(false);
+    	assertEquals(this.write(), output);
+
+    	// Also when the study blocks are formatted in parallel
+    	this.investigation.setIncrementalWriting(true);
+    	this.investigation.setFormattingThreads(2);
+    	assertEquals(output, this.write());
+    	studies.get(1).setTitle("Changed title");
+    	assertTrue(this.write().contains("Changed title"));
+    	assertEquals(1, this.investigation.getSectionsRendered());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class IsaArchiveWriterTest {
+
+	private static final Protocol sequencing = new Protocol("Sequencing");
+
+	private static final Protocol watering = new Protocol("Watering");
+
+	/**
+	 * @return the temporary files of spill buffers
+	 */
+	private static Set<Path> spillFiles() throws IOException {
+		Set<Path> files = new HashSet<Path>();
+		try (DirectoryStream<Path> directory = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")),
+				"isa4j*.spill")) {
+			for (Path file : directory)
+				files.add(file);
+		}
+		return files;
+	}
+
+	private static void writeAssay(WideTableFile assay) throws IOException {
+		for (int i = 0; i < 3000; i++) {
+			Sample sample = new Sample("Sample " + i);
+			Process process = new Process(sequencing);
+			process.setInput(sample);
+			process.setOutput(new DataFile("Raw Data File", "reads/" + i + ".fastq"));
+			assay.writeLine(sample);
+		}
+	}
+
+	private static void writeStudy(WideTableFile study) throws IOException {
+		for (int i = 0; i < 3000; i++) {
+			Source source = new Source("Plant " + i);
+			Process process = new Process(watering);
+			process.setInput(source);
+			process.setOutput(new Sample("Sample " + i));
+			study.writeLine(source);
+		}
+	}
+
+	@Test
+	void testSpillBuffer() throws IOException {
+		byte[] data = new byte[5 * SpillBuffer.BLOCK_SIZE + 17];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) i;
+		// Two blocks in memory, the rest in the temporary file
+		SpillBuffer buffer = new SpillBuffer(2 * SpillBuffer.BLOCK_SIZE);
+		buffer.write(data, 0, 100);
+		buffer.write(data[100]);
+		buffer.write(data, 101, data.length - 101);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		buffer.copyTo(os);
+		buffer.delete();
+		assertArrayEquals(data, os.toByteArray());
+	}
+
+	@Test
+	void testWriteToStream() throws IOException {
+		Investigation investigation = new Investigation("Investigation ID");
+		Study study = new Study("Study ID", "s_study.txt");
+		Assay assay = new Assay("a_assay.txt");
+		investigation.addStudy(study);
+		study.addAssay(assay);
+
+		ByteArrayOutputStream expectedInvestigation = new ByteArrayOutputStream();
+		investigation.writeToStream(expectedInvestigation);
+		ByteArrayOutputStream expectedStudy = new ByteArrayOutputStream();
+		study.setOutputStream(expectedStudy);
+		writeStudy(study);
+		study.releaseStream();
+		ByteArrayOutputStream expectedAssay = new ByteArrayOutputStream();
+		assay.setOutputStream(expectedAssay);
+		writeAssay(assay);
+		assay.releaseStream();
+
+		IsaArchiveWriter archive = new IsaArchiveWriter(investigation, "i_investigation.txt");
+		archive.add(study, IsaArchiveWriterTest::writeStudy);
+		archive.add(assay, IsaArchiveWriterTest::writeAssay);
+		assertThrows(IllegalArgumentException.class, () -> archive.add(study, IsaArchiveWriterTest::writeStudy));
+		assertThrows(IllegalArgumentException.class,
+				() -> archive.add(new Assay("i_investigation.txt"), IsaArchiveWriterTest::writeAssay));
+		// The archive is closed, but the stream of the caller stays open
+		boolean[] closed = new boolean[1];
+		ByteArrayOutputStream os = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		archive.writeToStream(os);
+		assertFalse(closed[0]);
+
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+			ZipEntry entry = zip.getNextEntry();
+			assertEquals("i_investigation.txt", entry.getName());
+			assertArrayEquals(expectedInvestigation.toByteArray(), zip.readAllBytes());
+			entry = zip.getNextEntry();
+			assertEquals("s_study.txt", entry.getName());
+			assertArrayEquals(expectedStudy.toByteArray(), zip.readAllBytes());
+			entry = zip.getNextEntry();
+			assertEquals("a_assay.txt", entry.getName());
+			assertArrayEquals(expectedAssay.toByteArray(), zip.readAllBytes());
+			assertNull(zip.getNextEntry());
+		}
+
+		// The first failure of any table is thrown and the files are released
+		IsaArchiveWriter broken = new IsaArchiveWriter(investigation, "i_investigation.txt");
+		broken.add(study, IsaArchiveWriterTest::writeStudy);
+		broken.add(assay, file -> {
+			writeAssay(file);
+			throw new IOException("Broken table");
+		});
+		IOException e = assertThrows(IOException.class, () -> broken.writeToStream(new ByteArrayOutputStream()));
+		assertEquals("Broken table", e.getMessage());
+		assay.setOutputStream(new ByteArrayOutputStream());
+		assay.releaseStream();
+	}
+
+	@Test
+	void testWriteToStreamFailure() throws IOException {
+		Investigation investigation = new Investigation("Investigation ID");
+		Study study = new Study("Study ID", "s_study.txt");
+		Assay assay = new Assay("a_assay.txt");
+		investigation.addStudy(study);
+		study.addAssay(assay);
+		Set<Path> before = spillFiles();
+
+		// The study fails once the assay wrote twice as much as is kept in memory,
+		// the assay ignores being cancelled and finishes
+		CountDownLatch spilled = new CountDownLatch(1);
+		IsaArchiveWriter broken = new IsaArchiveWriter(investigation, "i_investigation.txt");
+		broken.setThreads(2);
+		broken.add(study, file -> {
+			try {
+				spilled.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			throw new IOException("Broken table");
+		});
+		broken.add(assay, file -> {
+			char[] name = new char[1 << 20];
+			Arrays.fill(name, 'x');
+			for (int i = 0; i < 2 * IsaArchiveWriter.MEMORY_PER_TABLE / name.length; i++) {
+				Sample sample = new Sample(new String(name) + i);
+				Process process = new Process(sequencing);
+				process.setInput(sample);
+				process.setOutput(new DataFile("Raw Data File", "reads/" + i + ".fastq"));
+				file.writeLine(sample);
+			}
+			spilled.countDown();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!Thread.interrupted() && System.currentTimeMillis() < deadline)
+				Thread.yield();
+		});
+		IOException e = assertThrows(IOException.class, () -> broken.writeToStream(new ByteArrayOutputStream()));
+		assertEquals("Broken table", e.getMessage());
+
+		// Nothing is left behind
+		assertEquals(before, spillFiles());
+		assertTrue(Thread.getAllStackTraces().keySet().stream().noneMatch(t -> t.getName().startsWith("isa4j-pool-")));
+	}
+
+}
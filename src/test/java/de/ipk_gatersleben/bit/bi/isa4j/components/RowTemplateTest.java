@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class RowTemplateTest {
+
+	private static final List<Characteristic> characteristics = List.of(
+			new Characteristic("Species", new OntologyAnnotation("thaliana")),
+			new Characteristic("Growth Facility", new OntologyAnnotation("small LemnaTec phytochamber")));
+
+	private static final Ontology uo = new Ontology("UO", null, null, null);
+
+	private static final Protocol watering = new Protocol("Watering");
+
+	private static final ProtocolParameter volume = new ProtocolParameter("Volume");
+
+	private static Source row(int i) {
+		Source source = new Source("Plant_" + i);
+		source.setCharacteristics(characteristics);
+		Process process = new Process(watering);
+		process.setInput(source);
+		process.setParameterValues(List.of(new ParameterValue(volume, new OntologyAnnotation("" + (80 + i)),
+				new OntologyAnnotation("g", "http://purl.obolibrary.org/obo/UO_0000021", uo))));
+		process.setOutput(new Sample("1135FA-" + i));
+		return source;
+	}
+
+	@Test
+	void testWriteLine() throws IOException {
+		Study study = new Study("Study ID", "s_study.txt");
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		study.setOutputStream(expected);
+		for (int i = 0; i < 100; i++)
+			study.writeLine(row(i));
+		study.releaseStream();
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputStream(os);
+		Source example = row(0);
+		Process process = (Process) example.getNextStudyOrAssayTableObject();
+		Sample sample = (Sample) process.getNextStudyOrAssayTableObject();
+		RowTemplate template = study.createRowTemplate(example);
+		RowTemplate.Slot sourceName = template.slot(example, "Source Name");
+		RowTemplate.Slot sampleName = template.slot(sample, "Sample Name");
+		RowTemplate.Slot volumeValue = template.slot(process, "Parameter Value[Volume]");
+		assertSame(sourceName, template.slot(example, "Source Name", 0));
+
+		assertThrows(IllegalArgumentException.class, () -> template.slot(row(1), "Source Name"));
+		assertThrows(IllegalArgumentException.class, () -> template.slot(example, "Sample Name"));
+		assertThrows(IllegalArgumentException.class, () -> template.slot(example, "Source Name", 1));
+
+		// Unset slots have the value of the example
+		study.writeLine(template);
+		for (int i = 1; i < 100; i++) {
+			template.set(sourceName, "Plant_" + i);
+			template.set(sampleName, "1135FA-" + i);
+			template.set(volumeValue, "" + (80 + i));
+			study.writeLine(template);
+		}
+		study.releaseStream();
+
+		assertEquals(expected.toString(), os.toString());
+
+		// The template can't be used once the headers are gone
+		study.setOutputStream(new ByteArrayOutputStream());
+		study.writeLine(row(0));
+		assertThrows(IllegalStateException.class, () -> study.writeLine(template));
+		study.releaseStream();
+	}
+
+}
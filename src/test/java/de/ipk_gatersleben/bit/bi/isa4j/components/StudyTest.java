@@ -7,6 +7,7 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
@@ -18,10 +19,15 @@ import java.io.StringReader;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Month;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
 public class StudyTest {
 	
 	Study study;
@@ -31,6 +37,37 @@ public class StudyTest {
 		this.study = new Study("Study ID","s_study.txt");
 	}
 	
+	@Test
+	@SuppressWarnings("deprecation")
+	void testMapFieldHelpers() {
+		// Subclasses outside the package may still build their fields from maps
+    	Ontology ontology = new Ontology("Onto", null, null, null);
+    	Characteristic characteristic = new Characteristic("Organism", new OntologyAnnotation("Arabidopsis", "AAcc", ontology));
+    	Sample sample = new Sample("Sample");
+    	sample.addCharacteristic(characteristic);
+    	sample.addFactorValue(new FactorValue(new Factor("Height"), new OntologyAnnotation("high", "HAcc", ontology),
+    			new OntologyAnnotation("m", "MAcc", ontology)));
+    	sample.comments().add(new Comment("Note", "n"));
+
+    	Map<String, String[]> characteristics = sample.getFieldsForCharacteristics();
+    	assertEquals(1, characteristics.size());
+    	assertArrayEquals(new String[] { "Arabidopsis", "Onto", "AAcc" },
+    			characteristics.get(StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, "Organism")));
+
+    	Map<String, String[]> comments = sample.getFieldsForComments(sample.comments());
+    	assertEquals(1, comments.size());
+    	assertArrayEquals(new String[] { "n" }, comments.get(StringUtil.putNameInAttribute(StudyAssayAttribute.COMMENT, "Note")));
+
+    	Map<String, String[]> factorValues = sample.getFieldsForValues(StudyAssayAttribute.FACTOR_VALUE,
+    			sample.getFactorValues(), fv -> fv.getCategory().getName());
+    	assertEquals(1, factorValues.size());
+    	assertArrayEquals(new String[] { "high", "Onto", "HAcc", "m", "Onto", "MAcc" },
+    			factorValues.get(StringUtil.putNameInAttribute(StudyAssayAttribute.FACTOR_VALUE, "Height")));
+
+    	assertEquals(List.of("Onto", "AAcc"), sample.getOntologyAnnotationExtensionFields(characteristic, c -> c.getValue()));
+    	assertEquals(List.of(), sample.getOntologyAnnotationExtensionFields(new OntologyAnnotation("plain"), a -> a));
+	}
+	
 	@Test
 	void testWriteLine() throws IOException {
 		// Like in the investigation tests, compare our output to one generated by python isatools
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+public class TableOutputTest {
+
+	/**
+	 * ASCII, two and three byte characters, surrogate pairs and lone surrogates
+	 */
+	private static final char[] alphabet = { 'a', 'Z', '0', '\t', '\n', '\u007f', '\u0080', '\u00e9', '\u00b5',
+			'\u20ac', '\ufffd', '\ud83c', '\udf31', '\ud800', '\udc00' };
+
+	/**
+	 * Every line encoded on its own by the charset
+	 */
+	private static byte[] encoded(String[] lines) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for (String line : lines)
+			os.write(line.getBytes(Props.DEFAULT_CHARSET));
+		return os.toByteArray();
+	}
+
+	private static String[] randomLines(int count) {
+		Random random = new Random(42);
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(100);
+			for (int j = 0; j < length; j++)
+				sb.append(random.nextInt(3) == 0 ? alphabet[random.nextInt(alphabet.length)] : 'x');
+			lines[i] = sb.toString();
+		}
+		return lines;
+	}
+
+	@Test
+	void testWriteBuffered() throws IOException {
+		String[] lines = randomLines(2000);
+		for (int bufferSize : new int[] { TableOutput.MIN_BUFFER_SIZE, 17, 1000 }) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			TableOutput output = new BufferedTableOutput(os, bufferSize);
+			for (String line : lines)
+				output.write(line);
+			output.flush();
+			assertArrayEquals(encoded(lines), os.toByteArray());
+		}
+	}
+
+	@Test
+	void testWriteMapped() throws IOException {
+		String[] lines = randomLines(2000);
+		File file = File.createTempFile("isa4j", ".txt");
+		try {
+			TableOutput output = new MappedTableOutput(FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), TableOutput.MIN_BUFFER_SIZE);
+			for (String line : lines)
+				output.write(line);
+			output.close();
+			assertArrayEquals(encoded(lines), Files.readAllBytes(file.toPath()));
+		} finally {
+			file.delete();
+		}
+	}
+
+}
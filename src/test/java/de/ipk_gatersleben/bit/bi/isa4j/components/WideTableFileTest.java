@@ -7,23 +7,126 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Compression;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Deduplication;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 
 public class WideTableFileTest {
-	
+
+	@FunctionalInterface
+	private interface Writer {
+
+		void write(Study study) throws IOException;
+	}
+
+	/**
+	 * Add a characteristic with a different value to every line
+	 */
+	private static void addCharacteristics(List<Source> rows) {
+		for (int i = 0; i < rows.size(); i++)
+			rows.get(i).addCharacteristic(new Characteristic("Characteristic", new OntologyAnnotation("Value " + i)));
+	}
+
+	/**
+	 * @return the content of a file
+	 */
+	private static String contentOf(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+
+	/**
+	 * @return the lines written one by one with the default settings, with the
+	 *         header line
+	 */
+	private static String expected(List<Source> rows) throws IOException {
+		Study study = new Study("Study ID", "s_study.txt");
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputStream(os);
+		for (Source source : rows)
+			study.writeLine(source);
+		study.releaseStream();
+		return os.toString("UTF-8");
+	}
+
+	private static Writer lineByLine(List<Source> rows) {
+		return study -> {
+			for (Source source : rows)
+				study.writeLine(source);
+		};
+	}
+
+	/**
+	 * Lines of a source, a watering process and a sample
+	 */
+	private static List<Source> rows(int count) {
+		return rows(count, i -> "Source " + i, i -> "Sample " + i);
+	}
+
+	/**
+	 * Lines of a source, a watering process and a sample
+	 */
+	private static List<Source> rows(int count, IntFunction<String> sourceName, IntFunction<String> sampleName) {
+		List<Source> rows = new ArrayList<Source>(count);
+		for (int i = 0; i < count; i++) {
+			Source source = new Source(sourceName.apply(i));
+			Process process = new Process(new Protocol("Watering"));
+			process.setInput(source);
+			process.setOutput(new Sample(sampleName.apply(i)));
+			rows.add(source);
+		}
+		return rows;
+	}
+
+	/**
+	 * @return a temporary file that is deleted on exit
+	 */
+	private static File tempFile(String suffix) throws IOException {
+		File file = File.createTempFile("s_study", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
 	Study study;
+
+	/**
+	 * Write to a stream and compare what was written
+	 */
+	private void assertStreamed(String expected, Writer writer) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.study.setOutputStream(os);
+		writer.write(this.study);
+		this.study.releaseStream();
+		assertEquals(expected, os.toString("UTF-8"));
+	}
 	
 	@BeforeEach
 	void resetStudy() {
@@ -45,6 +148,28 @@ public class WideTableFileTest {
 		os.write(output.getBytes());
 	}
 	
+	@Test
+	void testDirectToChannel() throws IOException {
+		Source source = new Source("Source N\u00e4me");
+		source.addCharacteristic(new Characteristic("Gr\u00f6\u00dfe", new OntologyAnnotation("gro\u00df")));
+		Sample sample = new Sample("Sample Name");
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(sample);
+
+		// A buffer that is smaller than a line has to be drained several times per line
+		assertThrows(IllegalArgumentException.class, () -> study.setBufferSize(8));
+		study.setBufferSize(16);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputChannel(Channels.newChannel(os));
+		assertThrows(IllegalStateException.class, () -> study.setOutputStream(new ByteArrayOutputStream()));
+		study.writeLine(source);
+		study.writeLine(source);
+		study.closeFile();
+
+		assertEquals(expected(List.of(source, source)), os.toString("UTF-8"));
+	}
+
 	@Test
 	void testWriteHeadersFromExample() throws IOException {
 		Source source = new Source("Source Name");
@@ -104,4 +229,407 @@ public class WideTableFileTest {
     	this.study.releaseStream();
 	}
 
+	@Test
+	void testWriteLines() throws IOException {
+		List<Source> rows = rows(1000);
+		addCharacteristics(rows);
+		study.setFormattingThreads(4);
+		assertStreamed(expected(rows), s -> s.writeLines(rows.stream()));
+
+		// A broken line stops writing, but everything before it is written
+		rows.get(700).getNextStudyOrAssayTableObject().setNextStudyOrAssayTableObject(null);
+		assertStreamed(expected(rows.subList(0, 700)),
+				s -> assertThrows(NullPointerException.class, () -> s.writeLines(rows.iterator())));
+
+		assertThrows(IllegalArgumentException.class, () -> study.setFormattingThreads(0));
+	}
+
+	@Test
+	void testWriteLinesFromList() throws IOException {
+		// More rows than fit into one window of chunks with two threads
+		List<Source> rows = rows(5000);
+		addCharacteristics(rows);
+		String expected = expected(rows);
+		study.setFormattingThreads(2);
+		assertStreamed(expected, s -> s.writeLines(rows));
+		assertStreamed(expected, s -> s.writeLines(new LinkedList<Source>(rows)));
+
+		// A broken line in the second window stops writing, but everything before it
+		// is written
+		rows.get(3000).getNextStudyOrAssayTableObject().setNextStudyOrAssayTableObject(null);
+		assertStreamed(expected(rows.subList(0, 3000)),
+				s -> assertThrows(NullPointerException.class, () -> s.writeLines(rows)));
+	}
+
+	@Test
+	void testKnownShapes() throws IOException {
+		Source source = new Source("Source");
+		source.addCharacteristic(new Characteristic("Aa", new OntologyAnnotation("Value")));
+		source.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Big")));
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(new Sample("Sample"));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputStream(os);
+		study.writeLine(source);
+		// Same shape, the line is written again without checks
+		study.writeLine(source);
+
+		// Same widths, but the characteristics arrive in a different order
+		Source reordered = new Source("Reordered");
+		reordered.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Small")));
+		reordered.addCharacteristic(new Characteristic("Aa", new OntologyAnnotation("Other")));
+		Process process2 = new Process(new Protocol("Watering"));
+		process2.setInput(reordered);
+		process2.setOutput(new Sample("Sample 2"));
+		study.writeLine(reordered);
+		study.writeLine(reordered);
+
+		// "BB" has the same String hash code as "Aa", but is a different header
+		Source collision = new Source("Collision");
+		collision.addCharacteristic(new Characteristic("BB", new OntologyAnnotation("Value")));
+		collision.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Big")));
+		Process process3 = new Process(new Protocol("Watering"));
+		process3.setInput(collision);
+		process3.setOutput(new Sample("Sample 3"));
+		NullPointerException e = assertThrows(NullPointerException.class, () -> study.writeLine(collision));
+		assertTrue(e.getMessage().contains("Object: Source Name (1), Characteristics[BB] (1), Characteristics[Size] (1)"));
+		study.releaseStream();
+
+		String line = "Source" + Symbol.TAB + "Value" + Symbol.TAB + "Big" + Symbol.TAB + "Watering" + Symbol.TAB
+				+ "Sample" + Symbol.ENTER;
+		String reorderedLine = "Reordered" + Symbol.TAB + "Other" + Symbol.TAB + "Small" + Symbol.TAB + "Watering"
+				+ Symbol.TAB + "Sample 2" + Symbol.ENTER;
+		assertTrue(os.toString().endsWith(line + line + reorderedLine + reorderedLine));
+	}
+
+	@Test
+	void testMappedFile() throws IOException {
+		List<Source> rows = rows(500, i -> "Source \u00e4 " + i, i -> "Sample " + i);
+		File file = tempFile(".txt");
+		// Start with a tiny region so that many regions have to be mapped
+		study.setFileName(file.getPath());
+		study.setBufferSize(16);
+		study.openMappedFile();
+		assertThrows(IllegalStateException.class, () -> study.openMappedFile());
+		lineByLine(rows).write(study);
+		study.closeFile();
+
+		assertEquals(expected(rows), contentOf(file));
+
+		// Releasing truncates and closes the file as well
+		study.openMappedFile();
+		lineByLine(rows).write(study);
+		study.releaseStream();
+		assertEquals(expected(rows), contentOf(file));
+		assertTrue(file.delete());
+	}
+
+	@Test
+	void testAsynchronous() throws IOException {
+		List<Source> rows = rows(500);
+		// Tiny chunks, so that the writing thread has to wait for free ones
+		study.setAsynchronous(true);
+		study.setBufferSize(16);
+		assertStreamed(expected(rows), lineByLine(rows));
+
+		// Exceptions of the background thread reach the caller with one of the next
+		// lines and again when closing
+		OutputStream failing = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("Disk full");
+			}
+		};
+		study.setOutputStream(failing);
+		IOException e = assertThrows(IOException.class, () -> {
+			for (Source source : rows)
+				study.writeLine(source);
+		});
+		assertEquals("Disk full", e.getCause().getMessage());
+		e = assertThrows(IOException.class, () -> study.closeFile());
+		assertEquals("Disk full", e.getCause().getMessage());
+		// The file is unset even though closing failed
+		study.setOutputStream(new ByteArrayOutputStream());
+		study.releaseStream();
+	}
+
+	@Test
+	void testSharedAnnotations() throws IOException {
+		Ontology ncbi = new Ontology("NCBITaxon", null, null, null);
+		OntologyAnnotation species = new OntologyAnnotation("Arabidopsis thaliana",
+				"http://purl.obolibrary.org/obo/NCBITaxon_3702", ncbi);
+		Source source = new Source("Plant");
+		source.addCharacteristic(new Characteristic("Organism", species));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputStream(os);
+		study.writeLine(source);
+		study.writeLine(source);
+		// Changes of the annotation and its Term Source REF are not hidden by cached
+		// cells
+		species.setTerm("Hordeum vulgare");
+		species.setTermAccession("http://purl.obolibrary.org/obo/NCBITaxon_4513");
+		study.writeLine(source);
+		ncbi.setName("NCBI");
+		study.writeLine(source);
+		study.releaseStream();
+
+		String line = "Plant" + Symbol.TAB + "Arabidopsis thaliana" + Symbol.TAB + "NCBITaxon" + Symbol.TAB
+				+ "http://purl.obolibrary.org/obo/NCBITaxon_3702" + Symbol.ENTER;
+		String changedLine = "Plant" + Symbol.TAB + "Hordeum vulgare" + Symbol.TAB + "NCBITaxon" + Symbol.TAB
+				+ "http://purl.obolibrary.org/obo/NCBITaxon_4513" + Symbol.ENTER;
+		String renamedLine = "Plant" + Symbol.TAB + "Hordeum vulgare" + Symbol.TAB + "NCBI" + Symbol.TAB
+				+ "http://purl.obolibrary.org/obo/NCBITaxon_4513" + Symbol.ENTER;
+		assertTrue(os.toString().endsWith(line + line + changedLine + renamedLine));
+
+		// Only the most recently used annotations are kept
+		AnnotationCellCache cache = new AnnotationCellCache();
+		for (int i = 0; i < AnnotationCellCache.MAX_ENTRIES + 10; i++)
+			assertEquals("" + i, cache.get(new OntologyAnnotation("" + i)).text);
+		assertEquals(AnnotationCellCache.MAX_ENTRIES, cache.size());
+	}
+
+	@Test
+	void testCompressedFile() throws IOException {
+		List<Source> rows = rows(50000, i -> "Source \u00e4 " + i, i -> "Sample " + i);
+		byte[] expected = expected(rows).getBytes("UTF-8");
+
+		for (Compression compression : new Compression[] { Compression.GZIP, Compression.PARALLEL_GZIP }) {
+			File file = tempFile(".txt.gz");
+			study.setFileName(file.getPath());
+			study.setCompression(compression);
+			assertThrows(IllegalStateException.class, () -> study.openMappedFile());
+			study.openFile();
+			study.writeLines(rows.iterator());
+			study.closeFile();
+
+			try (InputStream is = new GZIPInputStream(new FileInputStream(file))) {
+				assertArrayEquals(expected, is.readAllBytes());
+			}
+			file.delete();
+		}
+	}
+
+	@Test
+	void testCheckpoints() throws IOException {
+		List<Source> rows = rows(1000);
+		File file = tempFile(".txt");
+		File sidecar = new File(file.getPath() + ".checkpoint");
+		sidecar.deleteOnExit();
+		Study crashingStudy = new Study("Study ID", file.getPath());
+		assertThrows(IllegalArgumentException.class, () -> crashingStudy.setCheckpointInterval(-1));
+		crashingStudy.setCheckpointInterval(100);
+		crashingStudy.setFormattingThreads(4);
+		crashingStudy.openFile();
+		for (Source source : rows.subList(0, 250))
+			crashingStudy.writeLine(source);
+		crashingStudy.writeLines(rows.subList(250, 420).iterator());
+		crashingStudy.writeLines(rows.subList(420, 580));
+		assertEquals(580, crashingStudy.getRowsWritten());
+		// The workers of all segments are stopped when the lines are written
+		assertTrue(Thread.getAllStackTraces().keySet().stream().noneMatch(t -> t.getName().startsWith("isa4j-pool-")));
+		// Lines after the last checkpoint are lost with the crash
+		crashingStudy.releaseStream();
+		assertTrue(sidecar.exists());
+
+		Study resumedStudy = new Study("Study ID", file.getPath());
+		Source other = new Source("Other");
+		other.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Big")));
+		assertThrows(IllegalStateException.class, () -> resumedStudy.resumeFile(other));
+		resumedStudy.setCheckpointInterval(100);
+		assertEquals(500, resumedStudy.resumeFile(rows.get(0)));
+		resumedStudy.writeLines(rows.subList(500, 1000));
+		assertEquals(1000, resumedStudy.getRowsWritten());
+		resumedStudy.closeFile();
+
+		assertEquals(expected(rows), contentOf(file));
+		assertFalse(sidecar.exists());
+		file.delete();
+	}
+
+	@Test
+	void testResumeDeduplicated() throws IOException {
+		// Lines 100 to 199 repeat the first 100
+		List<Source> rows = rows(1000, i -> "Source " + (i < 200 ? i % 100 : i - 100),
+				i -> "Sample " + (i < 200 ? i % 100 : i - 100));
+		List<Source> unique = new ArrayList<Source>(rows.subList(0, 100));
+		unique.addAll(rows.subList(200, 1000));
+		File file = tempFile(".txt");
+		File sidecar = new File(file.getPath() + ".checkpoint");
+		sidecar.deleteOnExit();
+		Study crashingStudy = new Study("Study ID", file.getPath());
+		crashingStudy.setDeduplication(Deduplication.HASH_SET);
+		crashingStudy.setCheckpointInterval(100);
+		crashingStudy.setFormattingThreads(4);
+		crashingStudy.openFile();
+		for (Source source : rows.subList(0, 150))
+			crashingStudy.writeLine(source);
+		crashingStudy.writeLines(rows.subList(150, 420).iterator());
+		crashingStudy.writeLines(rows.subList(420, 580));
+		assertEquals(480, crashingStudy.getRowsWritten());
+		crashingStudy.releaseStream();
+
+		// Checkpoints are due by the lines passed, not by the lines written
+		Study resumedStudy = new Study("Study ID", file.getPath());
+		resumedStudy.setDeduplication(Deduplication.HASH_SET);
+		resumedStudy.setCheckpointInterval(100);
+		resumedStudy.setFormattingThreads(4);
+		assertEquals(500, resumedStudy.resumeFile(rows.get(0)));
+		assertEquals(400, resumedStudy.getRowsWritten());
+		resumedStudy.writeLines(rows.subList(500, 1000));
+		// The lines in the file before the checkpoint are still known
+		resumedStudy.writeLines(rows.subList(0, 200));
+		assertEquals(900, resumedStudy.getRowsWritten());
+		assertEquals(200, resumedStudy.getDuplicateRows());
+		resumedStudy.closeFile();
+
+		assertEquals(expected(unique), contentOf(file));
+		assertFalse(sidecar.exists());
+		file.delete();
+	}
+
+	@Test
+	void testAppend() throws IOException {
+		Ontology uo = new Ontology("UO", null, null, null);
+		List<Source> rows = new ArrayList<Source>();
+		for (int i = 0; i < 100; i++) {
+			Source source = new Source("Source " + i);
+			source.addCharacteristic(new Characteristic("Organism",
+					new OntologyAnnotation("Arabidopsis thaliana", "NCBITaxon_3702", new Ontology("NCBITaxon", null, null, null))));
+			source.comments().add(new Comment("Origin", "Field"));
+			Process process = new Process(new Protocol("Watering"));
+			process.setParameterValues(List.of(new ParameterValue(new ProtocolParameter("Volume"), 80 + i,
+					new OntologyAnnotation("g", "UO_0000021", uo))));
+			process.setDate(LocalDate.of(2021, 3, 1));
+			process.setInput(source);
+			Material extract = new Material("Extract Name", "Extract " + i);
+			process.setOutput(extract);
+			Process extraction = new Process(new Protocol("Extraction"));
+			extraction.setInput(extract);
+			Sample sample = new Sample("Sample " + i);
+			sample.addFactorValue(new FactorValue(new Factor("Treatment"), "Drought"));
+			extraction.setOutput(sample);
+			rows.add(source);
+		}
+
+		study.setOutputStream(new ByteArrayOutputStream());
+		study.writeHeadersFromExample(rows.get(0));
+		ArrayList<LinkedHashMap<String, String[]>> headers = study.getHeaders();
+		study.releaseStream();
+
+		File file = tempFile(".txt");
+		// An empty file is written from the start
+		Study appendedStudy = new Study("Study ID", file.getPath());
+		appendedStudy.openFileForAppend();
+		assertFalse(appendedStudy.hasWrittenHeaders());
+		for (Source source : rows.subList(0, 40))
+			appendedStudy.writeLine(source);
+		appendedStudy.closeFile();
+
+		// Later runs get the header groups back from the file
+		appendedStudy.openFileForAppend();
+		assertEquals(headers.size(), appendedStudy.getHeaders().size());
+		for (int i = 0; i < headers.size(); i++) {
+			assertEquals(List.copyOf(headers.get(i).keySet()), List.copyOf(appendedStudy.getHeaders().get(i).keySet()));
+			for (String key : headers.get(i).keySet())
+				assertArrayEquals(headers.get(i).get(key), appendedStudy.getHeaders().get(i).get(key));
+		}
+		for (Source source : rows.subList(40, 100))
+			appendedStudy.writeLine(source);
+		// Lines are checked against the headers of the file
+		Source other = rows(1).get(0);
+		assertThrows(NullPointerException.class, () -> appendedStudy.writeLine(other));
+		appendedStudy.closeFile();
+		assertEquals(expected(rows), contentOf(file));
+
+		// A line that was cut off can't be appended to
+		Files.write(file.toPath(), "Source Name\tProtocol REF".getBytes("UTF-8"));
+		assertThrows(IllegalStateException.class, () -> appendedStudy.openFileForAppend());
+		file.delete();
+	}
+
+	@Test
+	void testDeduplication() throws IOException {
+		// The same 1000 lines three times, with characters that take several bytes
+		List<Source> rows = rows(3000, i -> "Pflanze \u00e4 " + i % 1000, i -> "Sample \ud83c\udf31 " + i % 1000);
+		String expected = expected(rows.subList(0, 1000));
+
+		study.setDeduplication(Deduplication.HASH_SET);
+		assertStreamed(expected, lineByLine(rows));
+		assertEquals(2000, study.getDuplicateRows());
+		assertEquals(1000, study.getRowsWritten());
+		assertTrue(study.getDeduplicationMemoryUsed() > 0);
+
+		study.setFormattingThreads(2);
+		assertStreamed(expected, s -> s.writeLines(rows));
+		assertEquals(2000, study.getDuplicateRows());
+		assertEquals(1000, study.getRowsWritten());
+
+		study.setDeduplication(Deduplication.BLOOM_FILTER);
+		study.setDeduplicationMemory(1 << 20);
+		assertStreamed(expected, s -> s.writeLines(rows.iterator()));
+		assertEquals(1 << 20, study.getDeduplicationMemoryUsed());
+		assertThrows(IllegalArgumentException.class, () -> study.setDeduplicationMemory(100));
+
+		// Lines of templates are recognized by the same hashes
+		assertStreamed(expected, s -> {
+			s.writeLine(rows.get(0));
+			RowTemplate template = s.createRowTemplate(rows.get(0));
+			RowTemplate.Slot sourceName = template.slot(rows.get(0), "Source Name");
+			RowTemplate.Slot sampleName = template.slot(rows.get(0).getNextStudyOrAssayTableObject()
+					.getNextStudyOrAssayTableObject(), "Sample Name");
+			for (int i = 0; i < 3000; i++) {
+				template.set(sourceName, "Pflanze \u00e4 " + i % 1000);
+				template.set(sampleName, "Sample \ud83c\udf31 " + i % 1000);
+				s.writeLine(template);
+			}
+		});
+		assertEquals(2001, study.getDuplicateRows());
+
+		study.setDeduplication(Deduplication.NONE);
+		study.setOutputStream(new ByteArrayOutputStream());
+		study.writeLine(rows.get(0));
+		study.releaseStream();
+		assertEquals(0, study.getDuplicateRows());
+	}
+
+	@Test
+	void testSortedOutput() throws IOException {
+		// Sample names in random order, every name twice
+		Random random = new Random(42);
+		List<Source> rows = rows(5000, i -> "Source " + i, i -> "Sample " + random.nextInt(2500));
+		String[] lines = expected(rows).split(Symbol.ENTER.toString());
+		List<String> sorted = new ArrayList<String>(List.of(lines).subList(1, lines.length));
+		// Stable, so lines with the same sample keep their order
+		sorted.sort(Comparator.comparing(line -> line.split(Symbol.TAB.toString())[2]));
+		StringBuilder expected = new StringBuilder(lines[0]).append(Symbol.ENTER.toString());
+		for (String line : sorted)
+			expected.append(line).append(Symbol.ENTER.toString());
+
+		// Everything fits into memory
+		study.setSortColumn("Sample Name");
+		assertStreamed(expected.toString(), lineByLine(rows));
+
+		// Many more runs than are merged at once
+		study.setBufferSize(1024);
+		study.setSortMemory(1024);
+		study.setFormattingThreads(2);
+		File file = tempFile(".txt");
+		study.setFileName(file.getPath());
+		study.openFile();
+		study.writeLines(rows);
+		study.closeFile();
+		assertEquals(expected.toString(), contentOf(file));
+		file.delete();
+
+		// Nothing is written without the column to sort by
+		study.setSortColumn("Sample Date");
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputStream(os);
+		assertThrows(IllegalStateException.class, () -> study.writeLine(rows.get(0)));
+		assertFalse(study.hasWrittenHeaders());
+		study.releaseStream();
+		assertEquals(0, os.size());
+	}
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.performanceTests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import de.ipk_gatersleben.bit.bi.isa4j.components.Comment;
+import de.ipk_gatersleben.bit.bi.isa4j.components.Commentable;
+import de.ipk_gatersleben.bit.bi.isa4j.components.Investigation;
+import de.ipk_gatersleben.bit.bi.isa4j.components.Person;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Compares writing an investigation file whose contacts carry MIAPPE-like
+ * comments, a few types every contact has and many types only some contacts
+ * have, with the implementation of the comment lines it replaced, which
+ * scanned every comment of every contact once per comment type. Prints the CPU
+ * time per call for both, for a growing number of contacts.
+ */
+public class CommentMatrixBenchmark {
+
+	/**
+	 * Number of comment types every contact has
+	 */
+	private static final int SHARED_TYPES = 10;
+
+	/**
+	 * Number of sparse comment types per contact
+	 */
+	private static final int SPARSE_PER_CONTACT = 5;
+
+	/**
+	 * Number of comment types of which every contact has some
+	 */
+	private static final int SPARSE_TYPES = 500;
+
+	/**
+	 * Takes the results, so that the calls can't be optimized away
+	 */
+	private static volatile int sink;
+
+	public static List<Person> contacts(int number) {
+		List<Person> contacts = new ArrayList<Person>();
+		for (int i = 0; i < number; i++) {
+			Person person = new Person("Last " + i, "First " + i, null, null, null);
+			for (int j = 0; j < SHARED_TYPES; j++)
+				person.comments().add(new Comment("Shared " + j, "value " + i + "/" + j));
+			for (int j = 0; j < SPARSE_PER_CONTACT; j++)
+				person.comments().add(new Comment("Sparse " + (i * 7 + j * 101) % SPARSE_TYPES, "value " + i));
+			contacts.add(person);
+		}
+		return contacts;
+	}
+
+	/**
+	 * Write a new investigation with the contacts, so that no section is cached
+	 */
+	private static String investigationFile(List<Person> contacts) {
+		Investigation investigation = new Investigation("Investigation ID");
+		for (Person person : contacts)
+			investigation.addContact(person);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			investigation.writeToStream(os);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return os.toString(StandardCharsets.UTF_8);
+	}
+
+	public static long measure(ThreadMXBean bean, Function<List<Person>, String> format, List<Person> contacts,
+			int iterations) {
+		long startingTime = bean.getCurrentThreadCpuTime();
+		int length = 0;
+		for (int i = 0; i < iterations; i++)
+			length += format.apply(contacts).length();
+		long time = bean.getCurrentThreadCpuTime() - startingTime;
+		sink = length;
+		return time;
+	}
+
+	public static void main(String[] args) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Function<List<Person>, String> scanning = CommentMatrixBenchmark::scanning;
+		Function<List<Person>, String> file = CommentMatrixBenchmark::investigationFile;
+
+		int numberOfRuns = 5;
+
+		for (int number : new int[] { 100, 1000, 5000 }) {
+			List<Person> contacts = contacts(number);
+			if (!file.apply(contacts).contains(scanning.apply(contacts)))
+				throw new IllegalStateException("The comment lines differ for " + number + " contacts");
+			int iterations = Math.max(1, 20000 / number);
+
+			// Warm up (discarded)
+			measure(threadBean, scanning, contacts, iterations);
+			measure(threadBean, file, contacts, iterations);
+
+			for (int x = 0; x < numberOfRuns; x++) {
+				System.out.println(number + " contacts, scanning comment lines: "
+						+ measure(threadBean, scanning, contacts, iterations) / (iterations * 1e6)
+						+ " ms/call, whole investigation file: "
+						+ measure(threadBean, file, contacts, iterations) / (iterations * 1e6) + " ms/call");
+			}
+		}
+	}
+
+	/**
+	 * The former implementation of the comment lines of the contacts
+	 */
+	private static <T extends Commentable> String scanning(List<T> commentables) {
+		List<List<Comment>> commentBuckets = commentables.stream()
+				.map(c -> c.comments().getAll())
+				.collect(Collectors.toList());
+
+		List<String> commentLevels = commentBuckets.stream()
+				.flatMap(bucket -> bucket.stream())
+				.map(comment -> comment.getName())
+				.distinct()
+				.collect(Collectors.toList());
+
+		StringBuilder sb = new StringBuilder();
+		for (String commentType : commentLevels) {
+			sb.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, commentType) + Symbol.TAB);
+			String commentLine = commentBuckets.stream()
+				.map(bucket -> bucket.stream()
+					.filter(comment -> comment.getName().equals(commentType))
+					.map(comment -> comment.getValue())
+					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
+				.collect(Collectors.joining(Symbol.TAB.toString()));
+			sb.append(commentLine);
+			sb.append(Symbol.ENTER.toString());
+		}
+		return sb.toString();
+	}
+
+}
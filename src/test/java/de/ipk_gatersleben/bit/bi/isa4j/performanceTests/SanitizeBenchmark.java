@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.performanceTests;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Compares {@link StringUtil#sanitize(String)} with the regular expression
+ * based implementation it replaced, on values as they appear in the real world
+ * example of {@link PerformanceTester}. Prints the CPU time per call for both.
+ */
+public class SanitizeBenchmark {
+
+	private static final List<String> VALUES = List.of("Plant_4711", "1135FA-4711", "thaliana",
+			"small LemnaTec phytochamber", "51.827721",
+			"http://eurisco.ipk-gatersleben.de/apex/f?p=103:16:::NO::P16_EURISCO_ACC_ID:1668187",
+			"http://purl.obolibrary.org/obo/UO_0000185", "automated (LemnaTec target weight)",
+			"4711FA_images/fluo/side/54/1135FA1001 side.fluo das_54 DEG_000 2011-10-12 11_09_36.png",
+			"Image analysis tool", "A_Fluo_Side_Big_Plant", "28.09.2011 12:34:37",
+			// User input does sometimes contain TABs and line breaks
+			"Plants were watered" + Symbol.ENTER + "every day", "Camera\tSensor");
+
+	/**
+	 * Takes the results, so that the calls can't be optimized away
+	 */
+	private static volatile int sink;
+
+	public static long measure(ThreadMXBean bean, UnaryOperator<String> sanitize, int iterations) {
+		long startingTime = bean.getCurrentThreadCpuTime();
+		int length = 0;
+		for (int i = 0; i < iterations; i++)
+			for (String value : VALUES)
+				length += sanitize.apply(value).length();
+		long time = bean.getCurrentThreadCpuTime() - startingTime;
+		sink = length;
+		return time;
+	}
+
+	public static void main(String[] args) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		UnaryOperator<String> regex = input -> input.replaceAll(Symbol.TAB.toString(), Symbol.SPACE.toString())
+				.replaceAll(Symbol.ENTER.toString(), Symbol.SPACE.toString());
+		UnaryOperator<String> singlePass = StringUtil::sanitize;
+
+		int iterations = 200000;
+		int numberOfRuns = 10;
+
+		// Warm up (discarded)
+		measure(threadBean, regex, iterations);
+		measure(threadBean, singlePass, iterations);
+
+		long calls = (long) iterations * VALUES.size();
+		for (int x = 0; x < numberOfRuns; x++) {
+			System.out.println("regex: " + measure(threadBean, regex, iterations) / (double) calls
+					+ " ns/call, single pass: " + measure(threadBean, singlePass, iterations) / (double) calls
+					+ " ns/call");
+		}
+	}
+
+}
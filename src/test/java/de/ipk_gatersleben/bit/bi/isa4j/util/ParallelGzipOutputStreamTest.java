@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+	private static byte[] gunzip(byte[] compressed) throws IOException {
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return is.readAllBytes();
+		}
+	}
+
+	@Test
+	void testEmpty() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(compressed, 2).close();
+		assertEquals(0, gunzip(compressed.toByteArray()).length);
+	}
+
+	@Test
+	void testWrite() throws IOException {
+		// Several blocks of text-like data, written in pieces of random size
+		Random random = new Random(42);
+		byte[] data = new byte[3 * ParallelGzipOutputStream.BLOCK_SIZE + 12345];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) ('a' + random.nextInt(8));
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream os = new ParallelGzipOutputStream(compressed, 3);
+		int offset = 0;
+		while (offset < data.length) {
+			int length = Math.min(data.length - offset, random.nextInt(100000));
+			os.write(data, offset, length);
+			offset += length;
+			// Flushing in between ends a block early
+			if (random.nextInt(10) == 0)
+				os.flush();
+		}
+		os.write('!');
+		os.close();
+		os.close();
+		assertThrows(IOException.class, () -> os.write('?'));
+
+		byte[] expected = new byte[data.length + 1];
+		System.arraycopy(data, 0, expected, 0, data.length);
+		expected[data.length] = '!';
+		assertArrayEquals(expected, gunzip(compressed.toByteArray()));
+	}
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2021 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class StringUtilTest {
+
+	@Test
+	void testIsNameInAttribute() {
+		assertTrue(StringUtil.isNameInAttribute("Characteristics[Organism]", StudyAssayAttribute.CHARACTERISTICS,
+				"Organism"));
+		assertFalse(StringUtil.isNameInAttribute("Characteristics[Organism]", StudyAssayAttribute.COMMENT,
+				"Organism"));
+		assertFalse(StringUtil.isNameInAttribute("Characteristics[Organism]", StudyAssayAttribute.CHARACTERISTICS,
+				"Organ"));
+		assertTrue(StringUtil.isNameInAttribute("Source Name", StudyAssayAttribute.SOURCE_NAME, "ignored"));
+	}
+
+	@Test
+	void testPutNameInAttribute() {
+		String name = StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, "Organism");
+		assertEquals("Characteristics[Organism]", name);
+		// The canonical String is returned for the same attribute and name
+		assertSame(name, StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, new String("Organism")));
+		assertEquals("Comment[Organism]", StringUtil.putNameInAttribute(StudyAssayAttribute.COMMENT, "Organism"));
+		assertEquals("Source Name", StringUtil.putNameInAttribute(StudyAssayAttribute.SOURCE_NAME, "Organism"));
+		assertThrows(NullPointerException.class,
+				() -> StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, null));
+	}
+
+	@Test
+	void testSanitize() {
+		assertNull(StringUtil.sanitize(null));
+
+		// Nothing to replace, the input is returned as it is
+		String clean = "small LemnaTec phytochamber";
+		assertSame(clean, StringUtil.sanitize(clean));
+		assertSame("", StringUtil.sanitize(""));
+
+		assertEquals("Camera Sensor", StringUtil.sanitize("Camera\tSensor"));
+		assertEquals("  a  b ", StringUtil.sanitize("\t\ta\t\tb\t"));
+		assertEquals("watered every day ", StringUtil.sanitize("watered" + Symbol.ENTER + "every\tday" + Symbol.ENTER));
+
+		// Same result as the regular expressions that were used before
+		String input = "x" + Symbol.ENTER + Symbol.ENTER + "\t\r\n\ry";
+		assertEquals(input.replaceAll(Symbol.TAB.toString(), Symbol.SPACE.toString())
+				.replaceAll(Symbol.ENTER.toString(), Symbol.SPACE.toString()), StringUtil.sanitize(input));
+	}
+
+}